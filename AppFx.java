@@ -1,54 +1,205 @@
 package com.quinpoint;
 
-import com.quinpoint.model.Advisor;
 import com.quinpoint.model.Client;
 import com.quinpoint.model.Message;
+import com.quinpoint.service.AumService;
+import com.quinpoint.service.BackgroundExecutor;
+import com.quinpoint.service.BookValuation;
+import com.quinpoint.service.CostBasis;
 import com.quinpoint.service.CsvLoaderService;
+import com.quinpoint.service.DailyReturns;
+import com.quinpoint.service.FileTailTickSource;
+import com.quinpoint.service.LoginIndex;
+import com.quinpoint.service.PerformanceService;
 import com.quinpoint.service.PortfolioService;
-
+import com.quinpoint.service.RiskReport;
+import com.quinpoint.service.RiskService;
+import com.quinpoint.service.SocketTickSource;
+import com.quinpoint.service.TickIngestor;
+import com.quinpoint.service.ValueSeries;
+
+import javafx.animation.Animation;
+import javafx.animation.KeyFrame;
+import javafx.animation.Timeline;
 import javafx.application.Application;
 import javafx.application.Platform;
+import javafx.collections.ObservableList;
 import javafx.geometry.Insets;
 import javafx.geometry.Pos;
+import javafx.scene.Node;
 import javafx.scene.Scene;
 import javafx.scene.canvas.Canvas;
 import javafx.scene.canvas.GraphicsContext;
 import javafx.scene.chart.LineChart;
 import javafx.scene.chart.NumberAxis;
 import javafx.scene.chart.PieChart;
+import javafx.scene.chart.XYChart;
 import javafx.scene.control.*;
 import javafx.scene.layout.*;
 import javafx.scene.paint.Color;
 import javafx.stage.FileChooser;
 import javafx.stage.Stage;
+import javafx.util.Duration;
+import javafx.util.StringConverter;
 
 import java.io.File;
 import java.io.IOException;
+import java.nio.file.Paths;
 import java.math.BigDecimal;
 import java.text.NumberFormat;
+import java.time.LocalDate;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
 import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+import java.util.function.Function;
 
 /**
  * Quinpoint Capital - JavaFX Demo App
  */
 public class AppFx extends Application {
 
+    private static final int CHART_POINTS = 500; // points on the portfolio value chart
+    private static final int RETURN_ROWS = 5;    // days listed on the Daily Returns card
+    private static final DateTimeFormatter RETURN_DATE = DateTimeFormatter.ofPattern("dd MMM", Locale.UK);
+    private static final int BACKGROUND_THREADS = 2;
+    // the page on screen is redrawn at most this often however fast the data changes
+    private static final Duration UI_FRAME = Duration.millis(250);
+    private static final long TICK_PUBLISH_MILLIS = 100;
+
     private CsvLoaderService csvLoader;
     private PortfolioService portfolioService;
+    private PerformanceService performanceService;
+    private AumService aumService;
+    private RiskService riskService;
+    // loading, valuations and message reads run here, never on the FX thread
+    private BackgroundExecutor background;
+    private CompletableFuture<Void> loaded;
+    // pages built this login, by name, and the one on screen
+    private final Map<String, Page> pages = new HashMap<>();
+    private Page currentPage;
+    private Notifier notifier;
+    private final AtomicBoolean dataChanged = new AtomicBoolean();
+    private Timeline frames;
+    private volatile TickIngestor ticks; // set by the load task
     private NumberFormat currency = NumberFormat.getCurrencyInstance(Locale.UK);
 
+    /** A page's nodes, built once per login, and the view models that fill them. */
+    private static final class Page {
+        final Region root;
+        final List<ViewModel<?>> models;
+
+        Page(Region root, List<ViewModel<?>> models) {
+            this.root = root;
+            this.models = models;
+        }
+
+        void refresh() {
+            for (ViewModel<?> m : models) m.refresh();
+        }
+    }
+
     @Override
     public void start(Stage stage) {
+        csvLoader = new CsvLoaderService("src/main/resources/data");
+        // -Dquinpoint.cacheDir=path keeps the data snapshot there rather than under the temp directory
+        String cacheDir = System.getProperty("quinpoint.cacheDir");
+        if (cacheDir != null) csvLoader.setSnapshotDirectory(Paths.get(cacheDir));
+        portfolioService = new PortfolioService(csvLoader);
+        performanceService = new PerformanceService(portfolioService);
+        aumService = new AumService(csvLoader);
+        riskService = new RiskService(csvLoader);
+        background = new BackgroundExecutor("quinpoint-background", BACKGROUND_THREADS);
+        notifier = new Notifier();
+        // the page on screen follows reloads and ticks, once per frame rather than once per
+        // event; the others catch up when they're shown
+        csvLoader.addReloadListener(r -> {
+            dataChanged.set(true);
+            if (!r.isTickUpdate() && AuthContext.getInstance().isAuthenticated()) notifier.info("Data updated");
+        });
+        frames = new Timeline(new KeyFrame(UI_FRAME, e -> {
+            if (dataChanged.getAndSet(false) && currentPage != null) currentPage.refresh();
+        }));
+        frames.setCycleCount(Animation.INDEFINITE);
+        frames.play();
+
+        // the services read whatever dataset the loader has published, so they can exist
+        // before it's loaded; the login page waits for this
+        loaded = background.submit(() -> {
+            csvLoader.loadAllParallel();
+            return null;
+        });
+        loaded.thenRunAsync(this::startLiveUpdates, background);
+        showLogin(stage); // start with login page
+    }
+
+    // after the load; these are extras, so if one can't start the data is still there to use
+    private void startLiveUpdates() {
+        // opt-in: -Dquinpoint.watchData=true reloads changed CSV files while the app runs
+        if (Boolean.getBoolean("quinpoint.watchData")) {
+            try {
+                csvLoader.startWatching();
+            } catch (IOException | RuntimeException e) {
+                notifier.error("Couldn't watch the data folder: " + e.getMessage(), e);
+            }
+        }
         try {
-            csvLoader = new CsvLoaderService("src/main/resources/data");
-            csvLoader.loadAll();
-            portfolioService = new PortfolioService(csvLoader);
-        } catch (IOException e) {
-            e.printStackTrace();
+            startTicks();
+        } catch (IOException | RuntimeException e) {
+            notifier.error("Couldn't start live prices: " + e.getMessage(), e);
         }
-        showLogin(stage); // start with login page
+    }
+
+    // opt-in live prices: -Dquinpoint.tickFile=path tails a file of "instrumentId,yyyy-MM-dd,close"
+    // lines, -Dquinpoint.tickPort=n reads the same lines from local connections on that port
+    private void startTicks() throws IOException {
+        String file = System.getProperty("quinpoint.tickFile");
+        Integer port = Integer.getInteger("quinpoint.tickPort");
+        if (file == null && port == null) return;
+        ticks = new TickIngestor(csvLoader, TICK_PUBLISH_MILLIS);
+        if (file != null) ticks.addSource(new FileTailTickSource(Paths.get(file), TICK_PUBLISH_MILLIS));
+        if (port != null) ticks.addSource(new SocketTickSource(port));
+    }
+
+    // hands the result to the FX thread once the background work is done
+    private <T> void onFx(CompletableFuture<T> future, Consumer<T> done, Consumer<Throwable> failed) {
+        future.whenComplete((result, error) -> Platform.runLater(() -> {
+            if (error == null) done.accept(result);
+            else failed.accept(error);
+        }));
+    }
+
+    private void showFailure(Label status, Throwable error) {
+        if (error instanceof CompletionException && error.getCause() != null) error = error.getCause();
+        error.printStackTrace();
+        status.setText("Couldn't load: " + error.getMessage());
+        status.setStyle("-fx-text-fill: red;");
+    }
+
+    private <T> ViewModel<T> viewModel(List<ViewModel<?>> models, BackgroundExecutor.Task<T> load) {
+        ViewModel<T> m = new ViewModel<>(csvLoader, background, load);
+        models.add(m);
+        return m;
+    }
+
+    // setting a label to what it already shows would still re-layout and re-apply CSS
+    private void show(Labeled label, String text, String style) {
+        if (!text.equals(label.getText())) label.setText(text);
+        if (!style.equals(label.getStyle())) label.setStyle(style);
+    }
+
+    // stands in for a value until it's computed
+    private Label placeholder() {
+        Label l = new Label("Loading...");
+        l.setStyle("-fx-text-fill: #999;");
+        return l;
     }
 
     // ------------------- LOGIN PAGE -------------------
@@ -110,9 +261,23 @@ public class AppFx extends Application {
         HBox sigRow = new HBox(10, signatureBox, clearSigBtn);
         sigRow.setAlignment(Pos.CENTER);
 
-        // login button
+        // login button, enabled once the data is loaded
         Button loginBtn = new Button("Login");
         Label msg = new Label();
+        ProgressIndicator progress = new ProgressIndicator();
+        progress.setPrefSize(24, 24);
+        Label loadingLabel = new Label("Loading data...");
+        HBox loadingRow = new HBox(8, progress, loadingLabel);
+        loadingRow.setAlignment(Pos.CENTER);
+        loginBtn.setDisable(true);
+        onFx(loaded, v -> {
+            loadingRow.setVisible(false);
+            loadingRow.setManaged(false);
+            loginBtn.setDisable(false);
+        }, error -> {
+            progress.setVisible(false);
+            showFailure(loadingLabel, error);
+        });
 
         loginBtn.setOnAction(e -> {
             if (nameField.getText().isBlank() || emailField.getText().isBlank()) {
@@ -127,14 +292,11 @@ public class AppFx extends Application {
                 String fullName = nameField.getText().trim();
                 String email = emailField.getText().trim();
 
-                Client client = csvLoader.findClientByNameEmail(fullName, email);
-                Advisor advisor = csvLoader.findAdvisorByNameEmail(fullName, email);
+                // clients take precedence over advisors with the same details
+                LoginIndex.User user = csvLoader.findUserByNameEmail(fullName, email);
 
-                if (client != null) {
-                    AuthContext.getInstance().login(client.getId(), client.getName(), client.getEmail());
-                    showMainApp(stage);
-                } else if (advisor != null) {
-                    AuthContext.getInstance().login(advisor.getId(), advisor.getName(), advisor.getEmail());
+                if (user != null) {
+                    AuthContext.getInstance().login(user.getId(), user.getName(), user.getEmail());
                     showMainApp(stage);
                 } else {
                     msg.setText("Details not found in database.");
@@ -148,10 +310,10 @@ public class AppFx extends Application {
                 logo, nameField, emailField,
                 uploadBtn, fileLabel,
                 sigLabel, sigRow,
-                loginBtn, msg
+                loginBtn, loadingRow, msg
         );
 
-        Scene loginScene = new Scene(form, 500, 550);
+        Scene loginScene = new Scene(notifier.wrap(form), 500, 550);
         stage.setScene(loginScene);
         stage.setTitle("Login - Quinpoint Capital");
         stage.show();
@@ -172,9 +334,11 @@ public class AppFx extends Application {
         root.setCenter(contentWrapper);
 
         // default page after login
-        contentWrapper.getChildren().setAll(createPortfolioPage());
+        pages.clear();
+        if (isAdvisor()) showPage(contentWrapper, "book", this::createBookPage);
+        else showPage(contentWrapper, "portfolio", this::createPortfolioPage);
 
-        Scene mainScene = new Scene(root, 1100, 650);
+        Scene mainScene = new Scene(notifier.wrap(root), 1100, 650);
         stage.setScene(mainScene);
         stage.setTitle("Quinpoint Capital");
         stage.show();
@@ -194,28 +358,51 @@ public class AppFx extends Application {
         Label userLabel = new Label(auth.getUserName() + "\n" + auth.getUserEmail());
 
         Button portfolioBtn = styledButton("Portfolio");
-        portfolioBtn.setOnAction(e -> contentWrapper.getChildren().setAll(createPortfolioPage()));
+        portfolioBtn.setOnAction(e -> showPage(contentWrapper, "portfolio", this::createPortfolioPage));
         Button performanceBtn = styledButton("Performance");
-        performanceBtn.setOnAction(e -> contentWrapper.getChildren().setAll(createPerformancePage()));
+        performanceBtn.setOnAction(e -> showPage(contentWrapper, "performance", this::createPerformancePage));
         Button transactionsBtn = styledButton("Transactions");
-        transactionsBtn.setOnAction(e -> contentWrapper.getChildren().setAll(createTransactionsPage()));
+        transactionsBtn.setOnAction(e -> showPage(contentWrapper, "transactions", models -> createTransactionsPage()));
         Button settingsBtn = styledButton("Settings");
-        settingsBtn.setOnAction(e -> contentWrapper.getChildren().setAll(createSettingsPage()));
+        settingsBtn.setOnAction(e -> showPage(contentWrapper, "settings", models -> createSettingsPage()));
         Button messagingBtn = styledButton("Messaging");
-        messagingBtn.setOnAction(e -> contentWrapper.getChildren().setAll(createMessagingPage()));
+        messagingBtn.setOnAction(e -> showPage(contentWrapper, "messaging", models -> createMessagingPage()));
         Button logoutBtn = styledButton("Logout");
         logoutBtn.setOnAction(e -> {
             AuthContext.getInstance().logout();
+            pages.clear();
+            currentPage = null;
             showLogin(stage);
         });
 
-        sidebar.getChildren().addAll(logo, userLabel,
-                portfolioBtn, performanceBtn, transactionsBtn,
+        sidebar.getChildren().addAll(logo, userLabel);
+        if (isAdvisor()) {
+            Button bookBtn = styledButton("Client Book");
+            bookBtn.setOnAction(e -> showPage(contentWrapper, "book", this::createBookPage));
+            sidebar.getChildren().add(bookBtn);
+        }
+        sidebar.getChildren().addAll(portfolioBtn, performanceBtn, transactionsBtn,
                 settingsBtn, messagingBtn, logoutBtn);
 
         return sidebar;
     }
 
+    // the page is built on first use; after that showing it again only swaps it in and
+    // refreshes its view models, which reload nothing unless the data changed
+    private void showPage(StackPane contentWrapper, String name, Function<List<ViewModel<?>>, Region> builder) {
+        Page page = pages.get(name);
+        if (page == null) {
+            List<ViewModel<?>> models = new ArrayList<>();
+            page = new Page(builder.apply(models), models);
+            pages.put(name, page);
+        }
+        currentPage = page;
+        if (contentWrapper.getChildren().size() != 1 || contentWrapper.getChildren().get(0) != page.root) {
+            contentWrapper.getChildren().setAll(page.root);
+        }
+        page.refresh();
+    }
+
     // simple styled button for sidebar
     private Button styledButton(String text) {
         Button b = new Button(text);
@@ -227,7 +414,9 @@ public class AppFx extends Application {
     }
 
     // ------------------- PORTFOLIO PAGE -------------------
-    private VBox createPortfolioPage() {
+    // the cards are laid out once; each is bound to a view model and fills in when its numbers are ready
+    private VBox createPortfolioPage(List<ViewModel<?>> models) {
+        String userId = AuthContext.getInstance().getUserId();
         VBox page = new VBox(20);
         page.setPadding(new Insets(20));
 
@@ -244,12 +433,22 @@ public class AppFx extends Application {
         valueCard.setStyle("-fx-background-color:white; -fx-background-radius:10; "
                 + "-fx-effect: dropshadow(gaussian, rgba(0,0,0,0.15), 8,0,0,2);");
 
-        BigDecimal total = portfolioService.getPortfolioValue(AuthContext.getInstance().getUserId());
-        Label totalValue = new Label(currency.format(total));
-        totalValue.setStyle("-fx-font-size:28px; -fx-font-weight:bold;");
-        Label change = new Label("+£950.00   +2.2%");
-        change.setStyle("-fx-text-fill: green;");
-        valueCard.getChildren().addAll(new Label("Total Value"), totalValue, change);
+        Label totalValue = placeholder();
+        totalValue.setStyle("-fx-font-size:28px; -fx-font-weight:bold; -fx-text-fill: #999;");
+        Label change = new Label();
+        Label sincePurchase = new Label();
+        ViewModel<BigDecimal> total = viewModel(models, () -> portfolioService.getPortfolioValue(userId));
+        total.bind(v -> show(totalValue, currency.format(v), "-fx-font-size:28px; -fx-font-weight:bold;"));
+        total.onError(e -> showFailure(totalValue, e));
+        ViewModel<CostBasis> costBasis = viewModel(models, () -> portfolioService.getCostBasis(userId));
+        costBasis.bind(basis -> {
+            show(change, formatPnl(basis.getUnrealisedPnl()) + "   " + formatPercent(basis.getUnrealisedReturn()),
+                    basis.getUnrealisedPnl().signum() < 0 ? "-fx-text-fill: red;" : "-fx-text-fill: green;");
+            show(sincePurchase, "Since purchase: TWR " + formatPercent(basis.getTimeWeightedReturn())
+                    + ", MWR " + formatPercent(basis.getMoneyWeightedReturn()) + " a year", "");
+        });
+        costBasis.onError(e -> showFailure(change, e));
+        valueCard.getChildren().addAll(new Label("Total Value"), totalValue, change, sincePurchase);
 
         // pie chart card
         VBox pieCard = new VBox(10);
@@ -257,11 +456,14 @@ public class AppFx extends Application {
         pieCard.setStyle("-fx-background-color:white; -fx-background-radius:10; "
                 + "-fx-effect: dropshadow(gaussian, rgba(0,0,0,0.15), 8,0,0,2);");
         PieChart pie = new PieChart();
-        pie.getData().add(new PieChart.Data("Stocks", 60));
-        pie.getData().add(new PieChart.Data("Bonds", 25));
-        pie.getData().add(new PieChart.Data("Real Estate", 10));
-        pie.getData().add(new PieChart.Data("Cash", 5));
-        pieCard.getChildren().addAll(new Label("Holdings Breakdown"), pie);
+        Label pieStatus = placeholder();
+        ViewModel<Map<String, BigDecimal>> breakdown = viewModel(models, () -> portfolioService.getAssetClassBreakdown(userId));
+        breakdown.bind(byClass -> {
+            pieCard.getChildren().remove(pieStatus);
+            updatePie(pie, byClass);
+        });
+        breakdown.onError(e -> showFailure(pieStatus, e));
+        pieCard.getChildren().addAll(new Label("Holdings Breakdown"), pieStatus, pie);
 
         // daily returns + add funds
         VBox returnsCard = new VBox(10);
@@ -270,13 +472,23 @@ public class AppFx extends Application {
                 + "-fx-effect: dropshadow(gaussian, rgba(0,0,0,0.15), 8,0,0,2);");
         Label returnsHeader = new Label("Daily Returns");
         Button addFunds = new Button("Add Funds");
-        addFunds.setOnAction(e -> showToast((Stage) page.getScene().getWindow(), "Feature coming soon!"));
-        VBox dailyList = new VBox(5);
-        dailyList.getChildren().addAll(
-                makeReturnRow("24 Apr", 1500),
-                makeReturnRow("16 Apr", 2200),
-                makeReturnRow("05 Apr", -11200)
-        );
+        addFunds.setOnAction(e -> notifier.info("Feature coming soon!"));
+        Label returnsStatus = placeholder();
+        VBox dailyList = new VBox(5, returnsStatus);
+        ViewModel<DailyReturns> dailyReturns = viewModel(models, () -> performanceService.getDailyReturns(userId, RETURN_ROWS));
+        dailyReturns.bind(daily -> {
+            List<Node> rows = new ArrayList<>();
+            for (int i = 0; i < daily.size(); i++) {
+                rows.add(makeReturnRow(daily.getDate(i), daily.getPnl(i)));
+            }
+            if (daily.size() > 0) {
+                rows.add(new Label(daily.size() + "-day return: " + formatPercent(daily.getPeriodReturn())));
+                rows.add(new Label("Best day: " + daily.getBestDate().format(RETURN_DATE) + " " + formatPnl(daily.getBestPnl())));
+                rows.add(new Label("Worst day: " + daily.getWorstDate().format(RETURN_DATE) + " " + formatPnl(daily.getWorstPnl())));
+            }
+            dailyList.getChildren().setAll(rows);
+        });
+        dailyReturns.onError(e -> showFailure(returnsStatus, e));
         returnsCard.getChildren().addAll(returnsHeader, addFunds, dailyList);
 
         // line chart
@@ -286,9 +498,42 @@ public class AppFx extends Application {
                 + "-fx-effect: dropshadow(gaussian, rgba(0,0,0,0.15), 8,0,0,2);");
         NumberAxis x = new NumberAxis();
         NumberAxis y = new NumberAxis();
+        x.setForceZeroInRange(false);
+        y.setForceZeroInRange(false);
+        x.setTickLabelFormatter(new StringConverter<>() {
+            @Override
+            public String toString(Number epochDay) {
+                return LocalDate.ofEpochDay(epochDay.longValue()).format(DateTimeFormatter.ofPattern("MMM yy"));
+            }
+
+            @Override
+            public Number fromString(String s) {
+                return null;
+            }
+        });
         LineChart<Number, Number> chart = new LineChart<>(x, y);
         chart.setTitle("Portfolio Value Over Time");
-        chartCard.getChildren().addAll(new Label("Portfolio Value"), chart);
+        chart.setCreateSymbols(false);
+        chart.setAnimated(false);
+        chart.setLegendVisible(false);
+        XYChart.Series<Number, Number> line = new XYChart.Series<>();
+        chart.getData().add(line);
+
+        // the chart can't show more points than it has pixels; downsampled keeps the shape.
+        // An unchanged history compares equal, so the line is only redrawn when it moved
+        Label chartStatus = placeholder();
+        ViewModel<ValueSeries> history = viewModel(models,
+                () -> portfolioService.getPortfolioHistorySeries(userId, null, null, CHART_POINTS));
+        history.bind(h -> {
+            chartCard.getChildren().remove(chartStatus);
+            List<XYChart.Data<Number, Number>> points = new ArrayList<>(h.size());
+            for (int i = 0; i < h.size(); i++) {
+                points.add(new XYChart.Data<>(h.getEpochDay(i), h.getValue(i).doubleValue()));
+            }
+            line.getData().setAll(points);
+        });
+        history.onError(e -> showFailure(chartStatus, e));
+        chartCard.getChildren().addAll(new Label("Portfolio Value"), chartStatus, chart);
 
         grid.add(valueCard, 0, 0);
         grid.add(pieCard, 1, 0);
@@ -299,31 +544,171 @@ public class AppFx extends Application {
         return page;
     }
 
+    // slices are updated in place when the asset classes are the same, so the pie doesn't rebuild
+    private void updatePie(PieChart pie, Map<String, BigDecimal> byClass) {
+        List<Map.Entry<String, BigDecimal>> shown = new ArrayList<>();
+        for (Map.Entry<String, BigDecimal> e : byClass.entrySet()) {
+            if (e.getValue().signum() > 0) shown.add(e);
+        }
+        ObservableList<PieChart.Data> slices = pie.getData();
+        boolean sameClasses = slices.size() == shown.size();
+        for (int i = 0; sameClasses && i < shown.size(); i++) {
+            sameClasses = slices.get(i).getName().equals(shown.get(i).getKey());
+        }
+        if (sameClasses) {
+            for (int i = 0; i < shown.size(); i++) {
+                double v = shown.get(i).getValue().doubleValue();
+                if (slices.get(i).getPieValue() != v) slices.get(i).setPieValue(v);
+            }
+            return;
+        }
+        List<PieChart.Data> data = new ArrayList<>(shown.size());
+        for (Map.Entry<String, BigDecimal> e : shown) data.add(new PieChart.Data(e.getKey(), e.getValue().doubleValue()));
+        slices.setAll(data);
+    }
+
     // helper for daily return row
-    private HBox makeReturnRow(String date, int amount) {
+    private HBox makeReturnRow(LocalDate date, BigDecimal amount) {
         HBox row = new HBox(10);
         row.setAlignment(Pos.CENTER_LEFT);
-        Label d = new Label(date);
-        Label amt = new Label((amount >= 0 ? "+" : "") + "£" + Math.abs(amount));
-        amt.setStyle("-fx-font-weight:bold;" + (amount >= 0 ? "-fx-text-fill: green;" : "-fx-text-fill: red;"));
+        Label d = new Label(date.format(RETURN_DATE));
+        Label amt = new Label(formatPnl(amount));
+        amt.setStyle("-fx-font-weight:bold;" + (amount.signum() >= 0 ? "-fx-text-fill: green;" : "-fx-text-fill: red;"));
         row.getChildren().addAll(d, amt);
         return row;
     }
 
+    // "+£1,500.00" / "-£11,200.00"
+    private String formatPnl(BigDecimal amount) {
+        return (amount.signum() >= 0 ? "+" : "-") + currency.format(amount.abs());
+    }
+
+    // ------------------- ADVISOR BOOK PAGE -------------------
+    private boolean isAdvisor() {
+        return csvLoader.getDataset().getAdvisors().containsKey(AuthContext.getInstance().getUserId());
+    }
+
+    /** The Client Book page's data: the valuation and its rows, formatted in the background. */
+    private static final class BookView {
+        final BookValuation book;
+        final List<String> rows;
+
+        BookView(BookValuation book, List<String> rows) {
+            this.book = book;
+            this.rows = rows;
+        }
+    }
+
+    private VBox createBookPage(List<ViewModel<?>> models) {
+        String userId = AuthContext.getInstance().getUserId();
+        VBox page = new VBox(15);
+        page.setPadding(new Insets(20));
+
+        Label header = new Label("Client Book");
+        header.setStyle("-fx-font-size:18px; -fx-font-weight:bold;");
+        Label aum = new Label("Assets Under Management: ...");
+        aum.setStyle("-fx-font-size:16px;");
+        Label count = placeholder();
+        ListView<String> clients = new ListView<>();
+        clients.setPlaceholder(new ProgressIndicator());
+
+        ViewModel<BookView> book = viewModel(models, () -> {
+            BookValuation b = aumService.valueAdvisor(userId);
+            return new BookView(b, bookRows(b));
+        });
+        book.bind(v -> {
+            show(aum, "Assets Under Management: " + currency.format(v.book.getTotal()), "-fx-font-size:16px;");
+            show(count, v.book.getClientCount() + " clients", "");
+            clients.setPlaceholder(new Label("No clients"));
+            if (!clients.getItems().equals(v.rows)) clients.getItems().setAll(v.rows);
+        });
+        book.onError(e -> showFailure(count, e));
+
+        page.getChildren().addAll(header, aum, count, clients);
+        return page;
+    }
+
+    // largest clients first
+    private List<String> bookRows(BookValuation book) {
+        NumberFormat money = NumberFormat.getCurrencyInstance(Locale.UK); // formats aren't thread-safe
+        Map<String, Client> known = csvLoader.getDataset().getClients();
+        List<String> rows = new ArrayList<>(book.getClientCount());
+        book.getClientValues().entrySet().stream()
+                .sorted(Map.Entry.<String, BigDecimal>comparingByValue().reversed())
+                .forEach(e -> {
+                    Client c = known.get(e.getKey());
+                    String name = c == null ? e.getKey() : c.getName() + " (" + e.getKey() + ")";
+                    rows.add(name + "   " + money.format(e.getValue()));
+                });
+        return rows;
+    }
+
     // ------------------- PERFORMANCE PAGE -------------------
-    private VBox createPerformancePage() {
+    // the stats come quickly; the Monte Carlo VaR fills in after them
+    private VBox createPerformancePage(List<ViewModel<?>> models) {
+        String userId = AuthContext.getInstance().getUserId();
         VBox page = new VBox(20);
         page.setPadding(new Insets(20));
-        page.getChildren().addAll(
-                new Label("Performance Analytics"),
-                new Label("• 1 Week: +1.8%"),
-                new Label("• 1 Month: +4.2%"),
-                new Label("• 1 Year: +18.9%"),
-                new Label("Risk Analysis: Medium, Sharpe Ratio 1.42")
-        );
+        Label oneWeek = placeholder();
+        Label oneMonth = placeholder();
+        Label oneYear = placeholder();
+        Label volatility = placeholder();
+        Label riskLevel = placeholder();
+        Label var = placeholder();
+
+        ViewModel<PerformanceService.Stats> stats = viewModel(models, () -> performanceService.getStats(userId));
+        ViewModel<RiskReport> risk = viewModel(models, () -> riskService.assess(userId));
+        // the risk line needs both
+        Runnable showRisk = () -> {
+            PerformanceService.Stats st = stats.valueProperty().get();
+            RiskReport r = risk.valueProperty().get();
+            if (st == null || r == null) return;
+            show(riskLevel, "Risk Analysis: " + r.getRiskLevel()
+                    + " (profile allows " + r.getAllowedLevel() + ")"
+                    + ", Sharpe Ratio " + formatRatio(st.getSharpe())
+                    + ", Sortino Ratio " + formatRatio(st.getSortino()),
+                    r.isOverBand() ? "-fx-text-fill: red;" : "");
+        };
+        stats.bind(st -> {
+            show(oneWeek, "• 1 Week: " + formatPercent(st.getOneWeekReturn()), "");
+            show(oneMonth, "• 1 Month: " + formatPercent(st.getOneMonthReturn()), "");
+            show(oneYear, "• 1 Year: " + formatPercent(st.getOneYearReturn()), "");
+            show(volatility, "Volatility: " + formatLevel(st.getVolatility())
+                    + ", Max Drawdown: " + formatLevel(st.getMaxDrawdown()), "");
+            showRisk.run();
+        });
+        stats.onError(e -> showFailure(oneWeek, e));
+        risk.bind(r -> {
+            show(var, String.format(Locale.UK, "1-Day VaR (%.0f%%): %s historical, %s Monte Carlo; CVaR %s",
+                    r.getConfidence() * 100, formatMoney(r.getHistoricalVar()),
+                    formatMoney(r.getMonteCarloVar()), formatMoney(r.getMonteCarloCvar())), "");
+            showRisk.run();
+        });
+        risk.onError(e -> showFailure(riskLevel, e));
+
+        page.getChildren().addAll(new Label("Performance Analytics"), oneWeek, oneMonth, oneYear, volatility, riskLevel, var);
         return page;
     }
 
+    // "+1.8%", or "n/a" when there isn't enough history
+    private String formatPercent(double fraction) {
+        if (Double.isNaN(fraction)) return "n/a";
+        return String.format(Locale.UK, "%+.1f%%", fraction * 100);
+    }
+
+    private String formatLevel(double fraction) {
+        if (Double.isNaN(fraction)) return "n/a";
+        return String.format(Locale.UK, "%.1f%%", fraction * 100);
+    }
+
+    private String formatMoney(BigDecimal amount) {
+        return amount == null ? "n/a" : currency.format(amount);
+    }
+
+    private String formatRatio(double ratio) {
+        return Double.isNaN(ratio) ? "n/a" : String.format(Locale.UK, "%.2f", ratio);
+    }
+
     // ------------------- TRANSACTIONS PAGE -------------------
     private VBox createTransactionsPage() {
         VBox page = new VBox(15);
@@ -344,7 +729,7 @@ public class AppFx extends Application {
         TextField name = new TextField(AuthContext.getInstance().getUserName());
         TextField email = new TextField(AuthContext.getInstance().getUserEmail());
         Button save = new Button("Save Changes");
-        save.setOnAction(e -> showToast((Stage) page.getScene().getWindow(), "Settings saved!"));
+        save.setOnAction(e -> notifier.info("Settings saved!"));
         page.getChildren().addAll(new Label("Settings"), new Label("Name:"), name, new Label("Email:"), email, save);
         return page;
     }
@@ -355,11 +740,10 @@ public class AppFx extends Application {
         page.setPadding(new Insets(20));
 
         Label title = new Label("Messages");
-        ListView<String> messages = new ListView<>();
-
-        // load messages from csv
-        csvLoader.loadMessagesForUser(AuthContext.getInstance().getUserId())
-                .forEach(m -> messages.getItems().add(m.getSenderLabel() + ": " + m.getText()));
+        // only the latest page is read now; older ones as the user scrolls up
+        PagedMessageList messages = new PagedMessageList(csvLoader, background, AuthContext.getInstance().getUserId(),
+                error -> notifier.error("Couldn't load messages", error));
+        messages.loadLatest();
 
         TextField input = new TextField();
         input.setPromptText("Type a message...");
@@ -371,12 +755,13 @@ public class AppFx extends Application {
                 String text = input.getText();
                 String ts = LocalDateTime.now().format(DateTimeFormatter.ofPattern("HH:mm"));
                 Message m = new Message(AuthContext.getInstance().getUserId(), ts, "You", text);
-                try {
-                    csvLoader.saveMessage(m);
-                } catch (IOException ex) {
-                    ex.printStackTrace();
-                }
-                messages.getItems().add("You (" + ts + "): " + text);
+                // written in the background so a slow disk can't stall the UI
+                CompletableFuture<Void> saved = csvLoader.saveMessageAsync(m);
+                saved.exceptionally(ex -> {
+                    notifier.error("Message couldn't be saved: " + text, ex);
+                    return null;
+                });
+                messages.addSent(m, saved);
                 input.clear();
             }
         });
@@ -386,22 +771,22 @@ public class AppFx extends Application {
         HBox row = new HBox(5, input, emoji, send);
         row.setAlignment(Pos.CENTER_LEFT);
 
-        page.getChildren().addAll(title, messages, row, new Label("All messages are encrypted and GDPR compliant"));
+        page.getChildren().addAll(title, messages.getView(), row, new Label("All messages are encrypted and GDPR compliant"));
         return page;
     }
 
-    // ------------------- TOAST NOTIFICATIONS -------------------
-    private void showToast(Stage stage, String message) {
-        Label toast = new Label(message);
-        toast.setStyle("-fx-background-color: #333; -fx-text-fill: white; -fx-padding: 10px; -fx-background-radius: 5;");
-        StackPane root = (StackPane) stage.getScene().getRoot();
-        root.getChildren().add(toast);
-        StackPane.setAlignment(toast, Pos.TOP_CENTER);
-
-        new Thread(() -> {
-            try { Thread.sleep(2000); } catch (InterruptedException ignored) {}
-            Platform.runLater(() -> root.getChildren().remove(toast));
-        }).start();
+    @Override
+    public void stop() {
+        if (frames != null) frames.stop();
+        if (ticks != null) {
+            try {
+                ticks.close();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+        if (background != null) background.close();
+        if (csvLoader != null) csvLoader.shutdown();
     }
 
     public static void main(String[] args) {
@@ -0,0 +1,224 @@
+package com.quinpoint.service;
+
+import com.quinpoint.model.Advisor;
+import com.quinpoint.model.Holding;
+import com.quinpoint.model.PortfolioAssignment;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Assets under management for one advisor, one desk or the whole firm, in one call.
+ *
+ * A run first resolves the latest close of every instrument once, into arrays by
+ * instrument index, then values the books in scope on a fork-join pool: each book is
+ * summed in fixed point (exact, like {@link PortfolioService#getPortfolioValue}) and
+ * rounded to pence. The per-advisor, per-desk and per-client totals are added up from
+ * the book values afterwards.
+ *
+ * A book is the holdings file of an assignment's portfolio id, or of its client id when
+ * there is no file for the portfolio. Firm-wide runs also include holdings files that no
+ * assignment points to, under {@link BookValuation#UNASSIGNED}.
+ */
+public class AumService {
+
+    private static final int LEAF_SIZE = 256; // books per fork-join leaf
+
+    private final CsvLoaderService loader;
+    private final ForkJoinPool pool;
+
+    public AumService(CsvLoaderService loader) {
+        this(loader, ForkJoinPool.commonPool());
+    }
+
+    public AumService(CsvLoaderService loader, ForkJoinPool pool) {
+        this.loader = loader;
+        this.pool = pool;
+    }
+
+    public BookValuation valueFirm() {
+        Dataset data = loader.getDataset(); // one consistent snapshot for the whole run
+        return value(data, data.getAssignments(), true);
+    }
+
+    public BookValuation valueDesk(String desk) {
+        Dataset data = loader.getDataset();
+        List<PortfolioAssignment> inScope = new ArrayList<>();
+        for (PortfolioAssignment pa : data.getAssignments()) {
+            Advisor a = data.getAdvisors().get(pa.getAdvisorId());
+            if (a != null && Objects.equals(a.getDesk(), desk)) inScope.add(pa);
+        }
+        return value(data, inScope, false);
+    }
+
+    public BookValuation valueAdvisor(String advisorId) {
+        Dataset data = loader.getDataset();
+        return value(data, data.getAssignmentsForAdvisor(advisorId), false);
+    }
+
+    // --- one run ---
+
+    private BookValuation value(Dataset data, List<PortfolioAssignment> assignments, boolean includeUnassigned) {
+        long start = System.nanoTime();
+        Map<String, List<Holding>> holdings = data.getHoldings();
+
+        // pick the books, each holdings file at most once
+        Set<String> seen = new HashSet<>();
+        List<String> bookKeys = new ArrayList<>();
+        List<String> clientIds = new ArrayList<>();
+        List<String> advisorIds = new ArrayList<>();
+        for (PortfolioAssignment pa : assignments) {
+            String key = holdings.containsKey(pa.getPortfolioId()) ? pa.getPortfolioId() : pa.getClientId();
+            if (!seen.add(key)) continue;
+            bookKeys.add(key);
+            clientIds.add(pa.getClientId());
+            advisorIds.add(pa.getAdvisorId());
+        }
+        if (includeUnassigned) {
+            for (String key : holdings.keySet()) {
+                if (!seen.add(key)) continue;
+                bookKeys.add(key);
+                clientIds.add(key);
+                advisorIds.add(null);
+            }
+        }
+
+        int n = bookKeys.size();
+        List<Holding>[] books = toBooks(bookKeys, holdings);
+        LatestPrices latest = new LatestPrices(data.getPrices());
+        long[] cents = new long[n];
+        int[] unpriced = new int[n];
+        pool.invoke(new ValueBooks(books, latest, cents, unpriced, 0, n));
+
+        return new BookValuation(data, clientIds.toArray(new String[0]), advisorIds.toArray(new String[0]),
+                books, cents, unpriced, System.nanoTime() - start);
+    }
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private static List<Holding>[] toBooks(List<String> keys, Map<String, List<Holding>> holdings) {
+        List<Holding>[] books = new List[keys.size()];
+        for (int i = 0; i < books.length; i++) books[i] = holdings.getOrDefault(keys.get(i), List.of());
+        return books;
+    }
+
+    /**
+     * Latest close of every instrument, resolved once per run. Closes are held in arrays
+     * by registry index, so holdings that carry an index are priced without hashing;
+     * holdings without one (or with a stale one) are looked up by id.
+     */
+    static final class LatestPrices {
+        private final long[] unscaled;
+        private final int[] scale;
+        private final String[] ids;
+        private final boolean[] present;
+        private final Map<String, Integer> slotById;
+
+        LatestPrices(PriceStore prices) {
+            int dense = prices.indexCapacity();
+            slotById = new HashMap<>(prices.size() * 2);
+            // series with a registry index sit at that index, any others after them
+            int unindexed = 0;
+            for (int i = 0; i < dense; i++) {
+                if (prices.get(i) != null) slotById.put(prices.get(i).getInstrumentId(), i);
+            }
+            for (String id : prices.instrumentIds()) if (!slotById.containsKey(id)) unindexed++;
+            int n = dense + unindexed;
+            unscaled = new long[n];
+            scale = new int[n];
+            ids = new String[n];
+            present = new boolean[n];
+            for (int i = 0; i < dense; i++) {
+                if (prices.get(i) != null) set(i, prices.get(i));
+            }
+            int next = dense;
+            for (String id : prices.instrumentIds()) {
+                if (!slotById.containsKey(id)) set(next++, prices.get(id));
+            }
+        }
+
+        private void set(int slot, PriceStore.Series s) {
+            ids[slot] = s.getInstrumentId();
+            slotById.put(s.getInstrumentId(), slot);
+            if (s.isEmpty()) return;
+            unscaled[slot] = s.getUnscaledClose(s.size() - 1);
+            scale[slot] = s.getScale();
+            present[slot] = true;
+        }
+
+        /** Slot holding h's latest close, or -1 if the instrument has no prices. */
+        int slotFor(Holding h) {
+            int i = h.getInstrumentIndex();
+            if (i >= 0 && i < ids.length && h.getInstrumentId().equals(ids[i])) return present[i] ? i : -1;
+            Integer slot = slotById.get(h.getInstrumentId());
+            return slot != null && present[slot] ? slot : -1;
+        }
+    }
+
+    private static final class ValueBooks extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final List<Holding>[] books;
+        private final LatestPrices latest;
+        private final long[] cents;
+        private final int[] unpriced;
+        private final int from, to;
+
+        ValueBooks(List<Holding>[] books, LatestPrices latest, long[] cents, int[] unpriced,
+                   int from, int to) {
+            this.books = books;
+            this.latest = latest;
+            this.cents = cents;
+            this.unpriced = unpriced;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from > LEAF_SIZE) {
+                int mid = (from + to) >>> 1;
+                invokeAll(new ValueBooks(books, latest, cents, unpriced, from, mid),
+                        new ValueBooks(books, latest, cents, unpriced, mid, to));
+                return;
+            }
+            for (int i = from; i < to; i++) {
+                try {
+                    cents[i] = valueFixedPoint(books[i], latest, unpriced, i);
+                } catch (ArithmeticException overflow) {
+                    unpriced[i] = 0;
+                    cents[i] = valueBigDecimal(books[i], latest, unpriced, i);
+                }
+            }
+        }
+    }
+
+    // sum of close * quantity as an exact long at the largest scale seen so far
+    static long valueFixedPoint(List<Holding> book, LatestPrices latest, int[] unpriced, int slot) {
+        FixedPoint.Sum sum = new FixedPoint.Sum();
+        for (Holding h : book) {
+            int p = latest.slotFor(h);
+            if (p < 0) {
+                unpriced[slot]++;
+                continue;
+            }
+            sum.addProduct(latest.unscaled[p], latest.scale[p], FixedPoint.quantity(h), h.getQuantityScale());
+        }
+        return sum.cents();
+    }
+
+    static long valueBigDecimal(List<Holding> book, LatestPrices latest, int[] unpriced, int slot) {
+        BigDecimal total = BigDecimal.ZERO;
+        for (Holding h : book) {
+            int p = latest.slotFor(h);
+            if (p < 0) {
+                unpriced[slot]++;
+                continue;
+            }
+            total = total.add(BigDecimal.valueOf(latest.unscaled[p], latest.scale[p]).multiply(h.getQuantity()));
+        }
+        return total.setScale(2, RoundingMode.HALF_UP).unscaledValue().longValueExact();
+    }
+}
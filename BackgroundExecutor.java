@@ -0,0 +1,63 @@
+package com.quinpoint.service;
+
+import java.io.Closeable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A few daemon threads for work a UI must not wait on: loading the data, valuations and
+ * reading message history. {@link #submit} returns a future straight away; if the task
+ * throws, the future completes exceptionally with that exception. It is also an
+ * {@link Executor}, for the async steps of those futures.
+ */
+public class BackgroundExecutor implements Executor, Closeable {
+
+    /** A piece of background work; unlike a Supplier it may throw checked exceptions. */
+    public interface Task<T> {
+        T call() throws Exception;
+    }
+
+    private final ExecutorService executor;
+    private final AtomicInteger threadCount = new AtomicInteger();
+
+    public BackgroundExecutor(String name, int threads) {
+        if (threads < 1) throw new IllegalArgumentException("threads must be at least 1");
+        this.executor = Executors.newFixedThreadPool(threads, r -> {
+            Thread t = new Thread(r, name + "-" + threadCount.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    public <T> CompletableFuture<T> submit(Task<T> task) {
+        CompletableFuture<T> future = new CompletableFuture<>();
+        try {
+            executor.execute(() -> {
+                if (future.isDone()) return; // cancelled while queued
+                try {
+                    future.complete(task.call());
+                } catch (Throwable e) {
+                    future.completeExceptionally(e);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            future.completeExceptionally(e);
+        }
+        return future;
+    }
+
+    @Override
+    public void execute(Runnable command) {
+        executor.execute(command);
+    }
+
+    /** Stops the threads; tasks still queued never run. */
+    @Override
+    public void close() {
+        executor.shutdownNow();
+    }
+}
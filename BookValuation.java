@@ -0,0 +1,95 @@
+package com.quinpoint.service;
+
+import com.quinpoint.model.Advisor;
+import com.quinpoint.model.Holding;
+
+import java.math.BigDecimal;
+import java.util.*;
+
+/**
+ * Result of one {@link AumService} run: the value of every book in scope and
+ * the totals per advisor, per desk and per client. All amounts are in pounds with 2dp.
+ */
+public final class BookValuation {
+
+    /** Advisor and desk key for books without a known advisor. */
+    public static final String UNASSIGNED = "(unassigned)";
+
+    private final long datasetVersion;
+    private final String[] clientIds;
+    private final long[] cents;
+    private final long totalCents;
+    private final int holdingCount;
+    private final int unpricedCount;
+    private final Map<String, Long> advisorCents = new LinkedHashMap<>();
+    private final Map<String, Long> deskCents = new LinkedHashMap<>();
+    private final long elapsedNanos;
+    private Map<String, BigDecimal> clientValues; // built on first request
+
+    BookValuation(Dataset data, String[] clientIds, String[] advisorIds, List<Holding>[] books,
+                  long[] cents, int[] unpriced, long elapsedNanos) {
+        this.datasetVersion = data.getVersion();
+        this.clientIds = clientIds;
+        this.cents = cents;
+        this.elapsedNanos = elapsedNanos;
+
+        long total = 0;
+        int holdings = 0, missing = 0;
+        for (int i = 0; i < cents.length; i++) {
+            total = Math.addExact(total, cents[i]);
+            holdings += books[i].size();
+            missing += unpriced[i];
+
+            Advisor a = advisorIds[i] == null ? null : data.getAdvisors().get(advisorIds[i]);
+            String advisorKey = advisorIds[i] == null ? UNASSIGNED : advisorIds[i];
+            String deskKey = a == null || a.getDesk() == null ? UNASSIGNED : a.getDesk();
+            advisorCents.merge(advisorKey, cents[i], Math::addExact);
+            deskCents.merge(deskKey, cents[i], Math::addExact);
+        }
+        this.totalCents = total;
+        this.holdingCount = holdings;
+        this.unpricedCount = missing;
+    }
+
+    public long getDatasetVersion() { return datasetVersion; }
+    public BigDecimal getTotal() { return BigDecimal.valueOf(totalCents, 2); }
+    public int getBookCount() { return cents.length; }
+    public int getHoldingCount() { return holdingCount; }
+    /** Holdings left out because their instrument has no prices. */
+    public int getUnpricedHoldingCount() { return unpricedCount; }
+    public long getElapsedMillis() { return elapsedNanos / 1_000_000; }
+
+    public Map<String, BigDecimal> getByAdvisor() {
+        return toPounds(advisorCents);
+    }
+
+    public Map<String, BigDecimal> getByDesk() {
+        return toPounds(deskCents);
+    }
+
+    /** Value per client, adding up clients that have more than one book. */
+    public synchronized Map<String, BigDecimal> getClientValues() {
+        if (clientValues == null) {
+            Map<String, Long> sums = new LinkedHashMap<>();
+            for (int i = 0; i < cents.length; i++) sums.merge(clientIds[i], cents[i], Math::addExact);
+            clientValues = toPounds(sums);
+        }
+        return clientValues;
+    }
+
+    public int getClientCount() {
+        return getClientValues().size();
+    }
+
+    private static Map<String, BigDecimal> toPounds(Map<String, Long> cents) {
+        Map<String, BigDecimal> out = new LinkedHashMap<>();
+        cents.forEach((k, v) -> out.put(k, BigDecimal.valueOf(v, 2)));
+        return Collections.unmodifiableMap(out);
+    }
+
+    @Override
+    public String toString() {
+        return "BookValuation[v" + datasetVersion + ", books=" + cents.length + ", total=" + getTotal()
+                + ", unpriced=" + unpricedCount + ", " + getElapsedMillis() + "ms]";
+    }
+}
@@ -0,0 +1,54 @@
+package com.quinpoint.service;
+
+import com.quinpoint.model.Holding;
+
+import java.util.List;
+
+/**
+ * The objects a client's figures are derived from: its holdings list and the price
+ * series of each holding's instrument, as found in one dataset. Reloads only
+ * replace what they re-parse, so comparing these by identity against a newer dataset
+ * tells whether anything the client depends on has changed.
+ */
+final class ClientInputs {
+
+    final String clientId;
+    final List<Holding> holdings;       // as stored in the dataset, null if the client has none
+    final String[] instruments;         // instrument of each holding
+    final PriceStore.Series[] series;   // its price series, null where there are no prices
+
+    private ClientInputs(String clientId, List<Holding> holdings, String[] instruments, PriceStore.Series[] series) {
+        this.clientId = clientId;
+        this.holdings = holdings;
+        this.instruments = instruments;
+        this.series = series;
+    }
+
+    static ClientInputs capture(String clientId, Dataset data) {
+        List<Holding> stored = data.getHoldings().get(clientId);
+        int n = stored == null ? 0 : stored.size();
+        String[] instruments = new String[n];
+        PriceStore.Series[] series = new PriceStore.Series[n];
+        for (int i = 0; i < n; i++) {
+            Holding h = stored.get(i);
+            instruments[i] = h.getInstrumentId();
+            series[i] = data.getPrices().seriesFor(h);
+        }
+        return new ClientInputs(clientId, stored, instruments, series);
+    }
+
+    /** Holdings of the client, never null. */
+    List<Holding> holdingsOrEmpty() {
+        return holdings != null ? holdings : List.of();
+    }
+
+    /** True if data still holds exactly these inputs for the client. */
+    boolean isCurrentIn(Dataset data) {
+        if (data.getHoldings().get(clientId) != holdings) return false;
+        PriceStore prices = data.getPrices();
+        for (int i = 0; i < instruments.length; i++) {
+            if (prices.seriesFor(holdings.get(i)) != series[i]) return false;
+        }
+        return true;
+    }
+}
@@ -0,0 +1,123 @@
+package com.quinpoint.service;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * Value of every client's holdings as of one date, from
+ * {@link PortfolioService#getPortfolioValuesAsOf(LocalDate)}. Values are kept as pence
+ * in one array by client slot; amounts are in pounds with 2dp.
+ */
+public final class ClientValuations {
+
+    private final LocalDate asOf;
+    private final long datasetVersion;
+    private final String[] clientIds;
+    private final Map<String, Integer> slotByClient;
+    private final long[] cents;
+    private final Map<Integer, BigDecimal> large; // slots whose value doesn't fit in long pence
+    private final BigDecimal total;
+    private final int unpricedCount;
+    private final long elapsedNanos;
+
+    ClientValuations(LocalDate asOf, long datasetVersion, String[] clientIds, Map<String, Integer> slotByClient,
+                     long[] cents, Map<Integer, BigDecimal> large, int unpricedCount, long elapsedNanos) {
+        this.asOf = asOf;
+        this.datasetVersion = datasetVersion;
+        this.clientIds = clientIds;
+        this.slotByClient = slotByClient;
+        this.cents = cents;
+        this.large = large;
+        this.unpricedCount = unpricedCount;
+        this.elapsedNanos = elapsedNanos;
+        long sum = 0;
+        BigDecimal big = BigDecimal.ZERO;
+        for (int i = 0; i < cents.length; i++) {
+            if (!large.isEmpty() && large.containsKey(i)) {
+                big = big.add(large.get(i));
+                continue;
+            }
+            try {
+                sum = Math.addExact(sum, cents[i]);
+            } catch (ArithmeticException overflow) {
+                big = big.add(BigDecimal.valueOf(sum, 2));
+                sum = cents[i];
+            }
+        }
+        this.total = big.add(BigDecimal.valueOf(sum, 2));
+    }
+
+    /** The valuation date, null for latest closes. */
+    public LocalDate getAsOf() { return asOf; }
+    public long getDatasetVersion() { return datasetVersion; }
+    public int size() { return clientIds.length; }
+    public String getClientId(int i) { return clientIds[i]; }
+    public BigDecimal getValue(int i) {
+        BigDecimal v = large.isEmpty() ? null : large.get(i);
+        return v != null ? v : BigDecimal.valueOf(cents[i], 2);
+    }
+
+    /** Value of a client's holdings, or null if the client has no holdings file. */
+    public BigDecimal getValue(String clientId) {
+        Integer i = slotByClient.get(clientId);
+        return i == null ? null : getValue(i);
+    }
+
+    public BigDecimal getTotal() { return total; }
+    /** Holdings left out because their instrument has no close on or before the date. */
+    public int getUnpricedHoldingCount() { return unpricedCount; }
+    public long getElapsedMillis() { return elapsedNanos / 1_000_000; }
+
+    /** Read-only clientId -> value view; values are created as they're read. */
+    public Map<String, BigDecimal> asMap() {
+        return new AbstractMap<>() {
+            @Override
+            public BigDecimal get(Object key) {
+                Integer i = slotByClient.get(key);
+                return i == null ? null : getValue(i);
+            }
+
+            @Override
+            public boolean containsKey(Object key) {
+                return slotByClient.containsKey(key);
+            }
+
+            @Override
+            public Set<Entry<String, BigDecimal>> entrySet() {
+                return new AbstractSet<>() {
+                    @Override
+                    public Iterator<Entry<String, BigDecimal>> iterator() {
+                        return new Iterator<>() {
+                            private int i;
+
+                            public boolean hasNext() { return i < clientIds.length; }
+
+                            public Entry<String, BigDecimal> next() {
+                                if (i >= clientIds.length) throw new NoSuchElementException();
+                                int at = i++;
+                                return new AbstractMap.SimpleImmutableEntry<>(clientIds[at], getValue(at));
+                            }
+                        };
+                    }
+
+                    @Override
+                    public int size() {
+                        return clientIds.length;
+                    }
+                };
+            }
+        };
+    }
+
+    @Override
+    public String toString() {
+        return "ClientValuations[asOf=" + asOf + ", v" + datasetVersion + ", clients=" + clientIds.length
+                + ", total=" + getTotal() + ", unpriced=" + unpricedCount + ", " + getElapsedMillis() + "ms]";
+    }
+}
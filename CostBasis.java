@@ -0,0 +1,250 @@
+package com.quinpoint.service;
+
+import com.quinpoint.model.Holding;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Cost basis and unrealised P&amp;L of a client's holdings, per holding and in total, with
+ * the time-weighted and money-weighted return since purchase. Amounts in pounds, 2dp.
+ *
+ * A holding's cost is its initial value, or its quantity at the close on the purchase
+ * date when the file has no initial value. Holdings with no cost or no current price are
+ * listed but left out of the totals.
+ */
+public final class CostBasis {
+
+    /** One holding. Amounts are null where unknown. */
+    public static final class Line {
+        private final String instrumentId;
+        private final BigDecimal quantity;
+        private final LocalDate datePurchased;
+        private final BigDecimal purchasePrice;
+        private final BigDecimal cost;
+        private final BigDecimal marketValue;
+
+        Line(String instrumentId, BigDecimal quantity, LocalDate datePurchased, BigDecimal purchasePrice,
+             BigDecimal cost, BigDecimal marketValue) {
+            this.instrumentId = instrumentId;
+            this.quantity = quantity;
+            this.datePurchased = datePurchased;
+            this.purchasePrice = purchasePrice;
+            this.cost = cost;
+            this.marketValue = marketValue;
+        }
+
+        public String getInstrumentId() { return instrumentId; }
+        public BigDecimal getQuantity() { return quantity; }
+        public LocalDate getDatePurchased() { return datePurchased; }
+        /** Close on (or last before) the purchase date. */
+        public BigDecimal getPurchasePrice() { return purchasePrice; }
+        public BigDecimal getCost() { return cost; }
+        public BigDecimal getMarketValue() { return marketValue; }
+
+        public BigDecimal getUnrealisedPnl() {
+            return cost == null || marketValue == null ? null : marketValue.subtract(cost);
+        }
+
+        /** Unrealised P&amp;L over cost, e.g. 0.12 for +12%; NaN if unknown. */
+        public double getReturn() {
+            return cost == null || marketValue == null || cost.signum() <= 0 ? Double.NaN
+                    : marketValue.doubleValue() / cost.doubleValue() - 1;
+        }
+    }
+
+    private final List<Line> lines;
+    private final BigDecimal cost;
+    private final BigDecimal marketValue;
+    private final LocalDate asOf;
+    private final double timeWeighted;
+    private final double moneyWeighted;
+
+    private CostBasis(List<Line> lines, BigDecimal cost, BigDecimal marketValue, LocalDate asOf,
+                      double timeWeighted, double moneyWeighted) {
+        this.lines = lines;
+        this.cost = cost;
+        this.marketValue = marketValue;
+        this.asOf = asOf;
+        this.timeWeighted = timeWeighted;
+        this.moneyWeighted = moneyWeighted;
+    }
+
+    /** Holdings in file order. */
+    public List<Line> getLines() { return lines; }
+    /** Cost and market value of the holdings that have both. */
+    public BigDecimal getCost() { return cost; }
+    public BigDecimal getMarketValue() { return marketValue; }
+    public BigDecimal getUnrealisedPnl() { return marketValue.subtract(cost); }
+
+    /** Unrealised P&amp;L over cost; NaN if there's no cost. */
+    public double getUnrealisedReturn() {
+        return cost.signum() > 0 ? marketValue.doubleValue() / cost.doubleValue() - 1 : Double.NaN;
+    }
+
+    /** Latest price date across the holdings, null if none are priced. */
+    public LocalDate getAsOf() { return asOf; }
+
+    /**
+     * Time-weighted return from the first purchase to {@link #getAsOf()}: the return of the
+     * holdings held in each period between purchase dates, chained. Purchases themselves
+     * don't count as growth. NaN if no holding has a purchase date and prices.
+     */
+    public double getTimeWeightedReturn() { return timeWeighted; }
+
+    /**
+     * Money-weighted return a year: the rate at which the costs paid on the purchase dates
+     * grow into today's market value. NaN if it can't be worked out.
+     */
+    public double getMoneyWeightedReturn() { return moneyWeighted; }
+
+    // --- computation ---
+
+    static CostBasis compute(ClientInputs inputs) {
+        List<Holding> holdings = inputs.holdingsOrEmpty();
+        int n = holdings.size();
+
+        // one pass to resolve every holding into parallel columns
+        boolean[] known = new boolean[n];   // both cost and market value known
+        double[] cost = new double[n];      // pounds, for the money-weighted return
+        double[] market = new double[n];
+        int[] bought = new int[n];          // epoch day, Integer.MIN_VALUE if unknown
+        double[] qty = new double[n];
+        List<Line> lines = new ArrayList<>(n);
+        int asOf = Integer.MIN_VALUE;
+        for (int i = 0; i < n; i++) {
+            Holding h = holdings.get(i);
+            PriceStore.Series s = inputs.series[i];
+            boolean priced = s != null && !s.isEmpty();
+            BigDecimal latest = priced ? s.latestClose() : null;
+            BigDecimal purchasePrice = priced && h.getDatePurchased() != null
+                    ? s.getClose(purchaseIndex(s, h.getDatePurchased().toEpochDay())) : null;
+
+            BigDecimal c = h.getInitialValue() != null ? h.getInitialValue()
+                    : purchasePrice != null ? purchasePrice.multiply(h.getQuantity()) : null;
+            c = c == null ? null : c.setScale(2, RoundingMode.HALF_UP);
+            BigDecimal mv = latest == null ? null : latest.multiply(h.getQuantity()).setScale(2, RoundingMode.HALF_UP);
+
+            known[i] = c != null && mv != null;
+            cost[i] = known[i] ? c.doubleValue() : 0;
+            market[i] = known[i] ? mv.doubleValue() : 0;
+            bought[i] = h.getDatePurchased() == null ? Integer.MIN_VALUE : (int) h.getDatePurchased().toEpochDay();
+            qty[i] = h.getQuantity().doubleValue();
+            if (priced) asOf = Math.max(asOf, s.getEpochDay(s.size() - 1));
+            lines.add(new Line(h.getInstrumentId(), h.getQuantity(), h.getDatePurchased(), purchasePrice, c, mv));
+        }
+
+        BigDecimal[] totals;
+        try {
+            totals = totalsFixedPoint(lines, known);
+        } catch (ArithmeticException overflow) {
+            totals = totalsBigDecimal(lines, known);
+        }
+
+        double twr = Double.NaN, mwr = Double.NaN;
+        if (asOf != Integer.MIN_VALUE) {
+            twr = timeWeighted(inputs.series, qty, bought, asOf);
+            mwr = moneyWeighted(cost, market, known, bought, asOf);
+        }
+        return new CostBasis(Collections.unmodifiableList(lines), totals[0], totals[1],
+                asOf == Integer.MIN_VALUE ? null : LocalDate.ofEpochDay(asOf), twr, mwr);
+    }
+
+    // cost and market value of the lines that have both, summed in pence
+    private static BigDecimal[] totalsFixedPoint(List<Line> lines, boolean[] known) {
+        long cost = 0, market = 0;
+        for (int i = 0; i < known.length; i++) {
+            if (!known[i]) continue;
+            cost = Math.addExact(cost, lines.get(i).cost.unscaledValue().longValueExact());
+            market = Math.addExact(market, lines.get(i).marketValue.unscaledValue().longValueExact());
+        }
+        return new BigDecimal[] {BigDecimal.valueOf(cost, 2), BigDecimal.valueOf(market, 2)};
+    }
+
+    // the same for totals that don't fit in a long
+    private static BigDecimal[] totalsBigDecimal(List<Line> lines, boolean[] known) {
+        BigDecimal cost = BigDecimal.ZERO.setScale(2), market = BigDecimal.ZERO.setScale(2);
+        for (int i = 0; i < known.length; i++) {
+            if (!known[i]) continue;
+            cost = cost.add(lines.get(i).cost);
+            market = market.add(lines.get(i).marketValue);
+        }
+        return new BigDecimal[] {cost, market};
+    }
+
+    // close on or before the day; the first close if the holding predates the price history
+    private static int purchaseIndex(PriceStore.Series s, long epochDay) {
+        return Math.max(0, s.indexAtOrBefore(epochDay));
+    }
+
+    private static double closeAt(PriceStore.Series s, long epochDay) {
+        return s.getUnscaledClose(purchaseIndex(s, epochDay)) * Math.pow(10, -s.getScale());
+    }
+
+    private static double timeWeighted(PriceStore.Series[] series, double[] qty, int[] bought, int asOf) {
+        // period boundaries: every purchase date up to asOf, then asOf
+        int[] bounds = new int[bought.length + 1];
+        int b = 0;
+        for (int i = 0; i < bought.length; i++) {
+            if (bought[i] != Integer.MIN_VALUE && bought[i] < asOf && series[i] != null && !series[i].isEmpty()) {
+                bounds[b++] = bought[i];
+            }
+        }
+        if (b == 0) return Double.NaN;
+        bounds[b++] = asOf;
+        Arrays.sort(bounds, 0, b);
+
+        double growth = 1;
+        for (int k = 0; k + 1 < b; k++) {
+            if (bounds[k] == bounds[k + 1]) continue;
+            double start = 0, end = 0;
+            for (int i = 0; i < bought.length; i++) {
+                if (bought[i] == Integer.MIN_VALUE || bought[i] > bounds[k] || series[i] == null || series[i].isEmpty()) {
+                    continue;
+                }
+                start += qty[i] * closeAt(series[i], bounds[k]);
+                end += qty[i] * closeAt(series[i], bounds[k + 1]);
+            }
+            if (start > 0) growth *= end / start;
+        }
+        return growth - 1;
+    }
+
+    // annual rate r with sum(cost_i * (1 + r)^years_i) = market value, by bisection
+    private static double moneyWeighted(double[] cost, double[] market, boolean[] known, int[] bought, int asOf) {
+        int m = 0;
+        double[] amounts = new double[cost.length];
+        double[] years = new double[cost.length];
+        double value = 0;
+        for (int i = 0; i < cost.length; i++) {
+            if (!known[i] || cost[i] <= 0 || bought[i] == Integer.MIN_VALUE || bought[i] > asOf) continue;
+            amounts[m] = cost[i];
+            years[m++] = (asOf - bought[i]) / 365.0;
+            value += market[i];
+        }
+        double longest = 0;
+        for (int i = 0; i < m; i++) longest = Math.max(longest, years[i]);
+        if (m == 0 || longest < 1.0 / 365) return Double.NaN;
+
+        double lo = -0.9999, hi = 1;
+        while (grown(amounts, years, m, hi) < value && hi < 1e6) hi *= 2;
+        if (grown(amounts, years, m, lo) > value || grown(amounts, years, m, hi) < value) return Double.NaN;
+        for (int iter = 0; iter < 200 && hi - lo > 1e-12; iter++) {
+            double mid = (lo + hi) / 2;
+            if (grown(amounts, years, m, mid) < value) lo = mid; else hi = mid;
+        }
+        return (lo + hi) / 2;
+    }
+
+    private static double grown(double[] amounts, double[] years, int m, double rate) {
+        double sum = 0;
+        double base = Math.log1p(rate);
+        for (int i = 0; i < m; i++) sum += amounts[i] * Math.exp(base * years[i]);
+        return sum;
+    }
+}
@@ -3,7 +3,9 @@ package com.quinpoint.service;
 import com.quinpoint.model.Advisor;
 import com.quinpoint.model.Client;
 import com.quinpoint.model.Holding;
+import com.quinpoint.model.Instrument;
 import com.quinpoint.model.Message;
+import com.quinpoint.model.PortfolioAssignment;
 import com.quinpoint.model.PricePoint;
 
 import java.io.*;
@@ -14,189 +16,845 @@ import java.nio.file.Path;
 import java.time.LocalDate;
 import java.time.format.DateTimeFormatter;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
 
 /**
  * Simple CSV loader and message persistence.
  * Expects a data directory path in constructor.
+ *
+ * Loaded data is published as an immutable {@link Dataset}; loads and reloads build
+ * a new one off to the side and swap it in with a single volatile write, so readers
+ * never see a half-loaded map.
  */
 public class CsvLoaderService {
 
+    private static final String SNAPSHOT_FILE = "dataset.snap";
+    /** After a reload the snapshot is rewritten once reloads have been quiet for this long. */
+    static final long SNAPSHOT_DELAY_MILLIS = 5_000;
+
     private final Path dataDir;
-    private final Map<String, Client> clients = new HashMap<>();
-    private final Map<String, Advisor> advisors = new HashMap<>();
-    private final Map<String, List<Holding>> holdings = new HashMap<>();
-    private final Map<String, List<PricePoint>> prices = new HashMap<>();
+    private final boolean offHeapPrices;
+    private volatile Dataset dataset;
+    private final Object writeLock = new Object(); // serialises loads and reloads
+    private final InstrumentRegistry instrumentRegistry = new InstrumentRegistry();
     private final DateTimeFormatter dtf = DateTimeFormatter.ofPattern("yyyy-MM-dd");
     private final Path messagesFile;
+    private final Path messageLogDir;
+    private MessageLog messageLog; // opened on first use
+    private MessageWriter messageWriter; // started on first async save
+    private long messageFlushMillis = 5;
+    private int messageBatchSize = 256;
+    private MessageWriter.Durability messageDurability = MessageWriter.Durability.OS_BUFFERED;
+    private Path snapshotFile;
+    private boolean snapshotEnabled = true;
+    private boolean loadedFromSnapshot;
+    // debounced snapshot writes after reloads; guarded by writeLock
+    private ScheduledExecutorService snapshotWriter; // started by the first reload
+    private ScheduledFuture<?> pendingSnapshot;
+    private Runnable pendingSnapshotWrite;
+    private final Map<String, Long> lastLoadTimings = new ConcurrentHashMap<>(); // phase -> nanos
+
+    // hot reload
+    private final List<Consumer<ReloadEvent>> reloadListeners = new CopyOnWriteArrayList<>();
+    private final AtomicLong reloadCount = new AtomicLong();
+    private volatile ReloadEvent lastReload;
+    private DataDirectoryWatcher watcher;
 
     public CsvLoaderService(String dataFolder) {
+        this(dataFolder, false);
+    }
+
+    /**
+     * @param offHeapPrices keep the price columns in direct buffers outside the Java heap
+     */
+    public CsvLoaderService(String dataFolder, boolean offHeapPrices) {
         this.dataDir = Path.of(dataFolder);
+        this.offHeapPrices = offHeapPrices;
         this.messagesFile = dataDir.resolve("messages.csv");
+        this.messageLogDir = dataDir.resolve("messages");
+        this.snapshotFile = defaultSnapshotDirectory(dataDir).resolve(SNAPSHOT_FILE);
+        this.dataset = Dataset.empty(offHeapPrices);
     }
 
     public void loadAll() throws IOException {
-        loadClients();
-        loadAdvisors();
-        loadHoldings();
-        loadPrices();
-        // messages file is optional; loadMessagesForUser reads it when needed
+        synchronized (writeLock) {
+            lastLoadTimings.clear();
+            long start = System.nanoTime();
+            List<DatasetSnapshot.SourceFile> sources = scanSources();
+            if (!loadFromSnapshot(sources)) {
+                Map<String, Client> c = timed("clients", this::readClients);
+                Map<String, Advisor> a = timed("advisors", this::readAdvisors);
+                List<PortfolioAssignment> pa = timed("assignments", this::readAssignments);
+                Map<String, Instrument> in = timed("instruments", this::readInstruments);
+                Map<String, List<Holding>> h = timed("holdings", () -> readHoldings(null));
+                PriceStore p = new PriceStore(offHeapPrices, instrumentRegistry);
+                timed("prices", () -> readPrices(null)).values().forEach(p::put);
+                publish(c, a, h, p, pa, in);
+                saveSnapshot(sources);
+            }
+            lastLoadTimings.put("total", System.nanoTime() - start);
+        }
+        // the message log is opened lazily by loadMessagesForUser/saveMessage
+    }
+
+    /**
+     * Parallel variant of {@link #loadAll()} with one worker per available core.
+     */
+    public void loadAllParallel() throws IOException {
+        loadAllParallel(Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Parallel variant of {@link #loadAll()}.
+     * The four phases run concurrently and the per-file parsing of holdings and prices
+     * fans out on a bounded fork-join pool. Every phase builds its own map and the maps
+     * are combined on the calling thread at the end, so the result matches the sequential path.
+     */
+    public void loadAllParallel(int parallelism) throws IOException {
+        synchronized (writeLock) {
+            lastLoadTimings.clear();
+            long start = System.nanoTime();
+            List<DatasetSnapshot.SourceFile> sources = scanSources();
+            if (!loadFromSnapshot(sources)) {
+                ForkJoinPool pool = new ForkJoinPool(Math.max(1, parallelism));
+                try {
+                    CompletableFuture<Map<String, Client>> c = phase(pool, "clients", this::readClients);
+                    CompletableFuture<Map<String, Advisor>> a = phase(pool, "advisors", this::readAdvisors);
+                    CompletableFuture<List<PortfolioAssignment>> pa = phase(pool, "assignments", this::readAssignments);
+                    CompletableFuture<Map<String, Instrument>> in = phase(pool, "instruments", this::readInstruments);
+                    CompletableFuture<Map<String, List<Holding>>> h = phase(pool, "holdings", () -> readHoldings(pool));
+                    CompletableFuture<Map<String, PriceStore.Series>> p = phase(pool, "prices", () -> readPrices(pool));
+
+                    PriceStore store = new PriceStore(offHeapPrices, instrumentRegistry);
+                    join(p).values().forEach(store::put);
+                    publish(join(c), join(a), join(h), store, join(pa), join(in));
+                } finally {
+                    pool.shutdown();
+                }
+                saveSnapshot(sources);
+            }
+            lastLoadTimings.put("total", System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * Wall-clock time of each phase of the last load, in milliseconds.
+     * Phases of a parallel load overlap, so they don't add up to "total".
+     */
+    public Map<String, Long> getLastLoadTimings() {
+        Map<String, Long> out = new LinkedHashMap<>();
+        for (String phase : List.of("snapshot", "clients", "advisors", "assignments", "instruments", "holdings", "prices", "snapshot-write", "total")) {
+            Long nanos = lastLoadTimings.get(phase);
+            if (nanos != null) out.put(phase, TimeUnit.NANOSECONDS.toMillis(nanos));
+        }
+        return out;
+    }
+
+    /**
+     * Turns the binary snapshot on or off (on by default). When on, a load first tries
+     * the snapshot and only parses the CSV files if they've changed since.
+     */
+    public void setSnapshotEnabled(boolean enabled) {
+        this.snapshotEnabled = enabled;
+    }
+
+    /**
+     * Where the snapshot is kept. Defaults to a folder per data directory under the
+     * system temp directory, so nothing is written next to the CSV files.
+     */
+    public void setSnapshotDirectory(Path dir) {
+        this.snapshotFile = dir.resolve(SNAPSHOT_FILE);
+    }
+
+    public Path getSnapshotFile() {
+        return snapshotFile;
+    }
+
+    // e.g. /tmp/quinpoint-cache/data-1f3a9c2e for ./src/main/resources/data
+    private static Path defaultSnapshotDirectory(Path dataDir) {
+        Path abs = dataDir.toAbsolutePath().normalize();
+        String name = abs.getFileName() == null ? "data" : abs.getFileName().toString();
+        return Path.of(System.getProperty("java.io.tmpdir"), "quinpoint-cache",
+                name + "-" + Integer.toHexString(abs.toString().hashCode()));
+    }
+
+    /** True if the last load was served from the binary snapshot. */
+    public boolean isLoadedFromSnapshot() {
+        return loadedFromSnapshot;
+    }
+
+    private List<DatasetSnapshot.SourceFile> scanSources() throws IOException {
+        loadedFromSnapshot = false;
+        return snapshotEnabled ? DatasetSnapshot.scanSources(dataDir) : null;
+    }
+
+    private boolean loadFromSnapshot(List<DatasetSnapshot.SourceFile> sources) throws IOException {
+        if (sources == null) return false;
+        DatasetSnapshot.Contents c = timed("snapshot", () -> DatasetSnapshot.read(snapshotFile, sources, offHeapPrices, instrumentRegistry));
+        if (c == null) return false;
+        PriceStore p = new PriceStore(offHeapPrices, instrumentRegistry);
+        c.prices.forEach(p::put);
+        publish(c.clients, c.advisors, c.holdings, p, c.assignments, c.instruments);
+        loadedFromSnapshot = true;
+        return true;
+    }
+
+    // a failed snapshot write only costs the next startup a CSV parse
+    private void saveSnapshot(List<DatasetSnapshot.SourceFile> sources) {
+        if (sources == null) return;
+        Dataset d = dataset;
+        try {
+            timed("snapshot-write", () -> {
+                writeSnapshot(sources, d);
+                return null;
+            });
+        } catch (IOException e) {
+            System.err.println("Could not write data snapshot: " + e.getMessage());
+        }
+    }
+
+    private void writeSnapshot(List<DatasetSnapshot.SourceFile> sources, Dataset d) throws IOException {
+        DatasetSnapshot.write(snapshotFile, sources, d.getClients(), d.getAdvisors(), d.getHoldings(), d.getPrices(),
+                d.getAssignments(), d.getInstruments());
+    }
+
+    // after a reload: writes the snapshot on a background thread once no other reload has
+    // come in for SNAPSHOT_DELAY_MILLIS, so a burst of file changes costs one write. Callers hold writeLock.
+    private void scheduleSnapshot(List<DatasetSnapshot.SourceFile> sources, Dataset d) {
+        if (sources == null) return;
+        if (snapshotWriter == null) {
+            snapshotWriter = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread t = new Thread(r, "snapshot-writer");
+                t.setDaemon(true);
+                return t;
+            });
+        }
+        if (pendingSnapshot != null) pendingSnapshot.cancel(false);
+        pendingSnapshotWrite = () -> {
+            try {
+                writeSnapshot(sources, d);
+            } catch (IOException e) {
+                System.err.println("Could not write data snapshot: " + e.getMessage());
+            }
+        };
+        pendingSnapshot = snapshotWriter.schedule(pendingSnapshotWrite, SNAPSHOT_DELAY_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    // writes a snapshot that's still waiting for its delay now, and stops the writer thread
+    private void flushSnapshot() {
+        synchronized (writeLock) {
+            if (pendingSnapshot != null && pendingSnapshot.cancel(false)) pendingSnapshotWrite.run();
+            pendingSnapshot = null;
+            pendingSnapshotWrite = null;
+            if (snapshotWriter != null) {
+                snapshotWriter.shutdown(); // a write already under way finishes
+                snapshotWriter = null;
+            }
+        }
+    }
+
+    // swaps in a new dataset; callers hold writeLock. Fresh maps are wrapped read-only,
+    // maps carried over from the previous dataset already are. The login index is only
+    // rebuilt when clients or advisors changed, the advisor index only when assignments did,
+    // the trading calendar only when prices did.
+    private Dataset publish(Map<String, Client> c, Map<String, Advisor> a, Map<String, List<Holding>> h,
+                            PriceStore p, List<PortfolioAssignment> pa, Map<String, Instrument> in) {
+        Dataset old = dataset;
+        boolean sameUsers = c == old.getClients() && a == old.getAdvisors();
+        boolean sameAssignments = pa == old.getAssignments();
+        Dataset next = new Dataset(old.getVersion() + 1,
+                c == old.getClients() ? c : Collections.unmodifiableMap(c),
+                a == old.getAdvisors() ? a : Collections.unmodifiableMap(a),
+                h == old.getHoldings() ? h : Collections.unmodifiableMap(h),
+                p,
+                sameUsers ? old.getLoginIndex() : LoginIndex.build(c.values(), a.values()),
+                sameAssignments ? pa : Collections.unmodifiableList(pa),
+                sameAssignments ? old.assignmentsByAdvisor() : indexByAdvisor(pa),
+                in == old.getInstruments() ? in : Collections.unmodifiableMap(in),
+                p == old.getPrices() ? old.getCalendar() : TradingCalendar.build(p, old.getCalendar()));
+        dataset = next;
+        return next;
+    }
+
+    private static Map<String, List<PortfolioAssignment>> indexByAdvisor(List<PortfolioAssignment> assignments) {
+        Map<String, List<PortfolioAssignment>> out = new HashMap<>();
+        for (PortfolioAssignment pa : assignments) {
+            out.computeIfAbsent(pa.getAdvisorId(), k -> new ArrayList<>()).add(pa);
+        }
+        out.replaceAll((k, v) -> Collections.unmodifiableList(v));
+        return Collections.unmodifiableMap(out);
+    }
+
+    // --- Hot reload ---
+
+    /**
+     * Starts watching the data directory and reloading changed files in the background.
+     * Off by default.
+     */
+    public void startWatching() throws IOException {
+        startWatching(250);
+    }
+
+    public synchronized void startWatching(long debounceMillis) throws IOException {
+        if (watcher != null) return;
+        watcher = new DataDirectoryWatcher(this, dataDir, debounceMillis);
+        watcher.start();
+    }
+
+    public synchronized void stopWatching() {
+        if (watcher == null) return;
+        try {
+            watcher.close();
+        } catch (IOException e) {
+            // nothing useful to do on shutdown
+        }
+        watcher = null;
+    }
+
+    public synchronized boolean isWatching() {
+        return watcher != null;
+    }
+
+    /**
+     * Re-parses only the given files and publishes the result as a new dataset.
+     * Paths other than clients.csv, advisors.csv, portfolio_assignments.csv, instruments.csv,
+     * portfolio_holdings/ and prices/ are ignored; files that no longer exist are dropped.
+     * Returns null if none of the paths mattered.
+     */
+    public ReloadEvent reload(Collection<Path> changedFiles) throws IOException {
+        ReloadEvent event;
+        synchronized (writeLock) {
+            long start = System.nanoTime();
+            Path root = dataDir.toAbsolutePath().normalize();
+            Path holdingsDir = root.resolve("portfolio_holdings");
+            Path pricesDir = root.resolve("prices");
+
+            boolean clientsChanged = false, advisorsChanged = false, assignmentsChanged = false;
+            boolean instrumentsChanged = false;
+            Set<String> changedHoldings = new LinkedHashSet<>();
+            Set<String> changedInstruments = new LinkedHashSet<>();
+            for (Path f : changedFiles) {
+                Path abs = f.toAbsolutePath().normalize();
+                String name = abs.getFileName().toString();
+                if (!name.endsWith(".csv")) continue;
+                Path parent = abs.getParent();
+                if (root.equals(parent)) {
+                    if (name.equals("clients.csv")) clientsChanged = true;
+                    if (name.equals("advisors.csv")) advisorsChanged = true;
+                    if (name.equals("portfolio_assignments.csv")) assignmentsChanged = true;
+                    if (name.equals("instruments.csv")) instrumentsChanged = true;
+                } else if (holdingsDir.equals(parent)) {
+                    changedHoldings.add(fileId(abs));
+                } else if (pricesDir.equals(parent)) {
+                    changedInstruments.add(fileId(abs));
+                }
+            }
+            if (!clientsChanged && !advisorsChanged && !assignmentsChanged && !instrumentsChanged
+                    && changedHoldings.isEmpty() && changedInstruments.isEmpty()) {
+                return null;
+            }
+
+            // scanned before reading, so a file changed meanwhile makes the snapshot stale, not wrong
+            List<DatasetSnapshot.SourceFile> sources = scanSources();
+            Dataset old = dataset;
+            Map<String, Client> c = clientsChanged ? readClients() : old.getClients();
+            Map<String, Advisor> a = advisorsChanged ? readAdvisors() : old.getAdvisors();
+            List<PortfolioAssignment> pa = assignmentsChanged ? readAssignments() : old.getAssignments();
+            Map<String, Instrument> in = instrumentsChanged ? readInstruments() : old.getInstruments();
+
+            Map<String, List<Holding>> h = old.getHoldings();
+            if (!changedHoldings.isEmpty()) {
+                h = new HashMap<>(h);
+                for (String id : changedHoldings) {
+                    Path f = holdingsDir.resolve(id + ".csv");
+                    if (Files.exists(f)) h.put(id, parseHoldingsFile(f)); else h.remove(id);
+                }
+            }
+
+            PriceStore p = old.getPrices();
+            if (!changedInstruments.isEmpty()) {
+                p = p.copy();
+                for (String id : changedInstruments) {
+                    Path f = pricesDir.resolve(id + ".csv");
+                    PriceStore.Series s = Files.exists(f) ? parsePriceFile(f) : null;
+                    if (s != null) p.put(s); else p.remove(id);
+                }
+            }
+
+            Dataset next = publish(c, a, h, p, pa, in);
+            event = new ReloadEvent(old, next, clientsChanged, advisorsChanged, assignmentsChanged, instrumentsChanged,
+                    changedHoldings, changedInstruments, false, System.nanoTime() - start);
+            scheduleSnapshot(sources, next);
+        }
+        fireReload(event);
+        return event;
+    }
+
+    /**
+     * Publishes live closes as a new dataset, like a reload of just those instruments'
+     * price files. Each list is one instrument's ticks, sorted by day with one tick per day;
+     * a tick for a day the series has replaces its close, others add a day. The ticks are
+     * only held in memory: a later reload of the instrument's price file replaces them.
+     */
+    public ReloadEvent applyTicks(Map<String, List<PriceTick>> ticksByInstrument) {
+        if (ticksByInstrument.isEmpty()) return null;
+        ReloadEvent event;
+        synchronized (writeLock) {
+            long start = System.nanoTime();
+            Dataset old = dataset;
+            PriceStore p = old.getPrices().copy();
+            for (Map.Entry<String, List<PriceTick>> e : ticksByInstrument.entrySet()) {
+                List<PriceTick> ticks = e.getValue();
+                int n = ticks.size();
+                int[] days = new int[n];
+                long[] unscaled = new long[n];
+                int[] scales = new int[n];
+                for (int i = 0; i < n; i++) {
+                    PriceTick t = ticks.get(i);
+                    days[i] = t.getEpochDay();
+                    unscaled[i] = t.getUnscaledClose();
+                    scales[i] = t.getScale();
+                }
+                PriceStore.Series s = p.get(e.getKey());
+                if (s == null) p.put(e.getKey(), days, unscaled, scales, n);
+                else p.put(s.withCloses(days, unscaled, scales, n, offHeapPrices));
+            }
+            Dataset next = publish(old.getClients(), old.getAdvisors(), old.getHoldings(), p, old.getAssignments(),
+                    old.getInstruments());
+            event = new ReloadEvent(old, next, false, false, false, false, new LinkedHashSet<>(),
+                    new LinkedHashSet<>(ticksByInstrument.keySet()), false, true, System.nanoTime() - start);
+        }
+        fireReload(event);
+        return event;
+    }
+
+    /**
+     * Re-reads the whole data directory, e.g. when the watcher may have missed events.
+     */
+    public ReloadEvent reloadAll() throws IOException {
+        ReloadEvent event;
+        synchronized (writeLock) {
+            long start = System.nanoTime();
+            List<DatasetSnapshot.SourceFile> sources = scanSources();
+            Dataset old = dataset;
+            PriceStore p = new PriceStore(offHeapPrices, instrumentRegistry);
+            readPrices(null).values().forEach(p::put);
+            Dataset next = publish(readClients(), readAdvisors(), readHoldings(null), p, readAssignments(),
+                    readInstruments());
+
+            Set<String> holdingIds = new LinkedHashSet<>(old.getHoldings().keySet());
+            holdingIds.addAll(next.getHoldings().keySet());
+            Set<String> instrumentIds = new LinkedHashSet<>(old.getPrices().instrumentIds());
+            instrumentIds.addAll(next.getPrices().instrumentIds());
+            event = new ReloadEvent(old, next, true, true, true, true, holdingIds, instrumentIds,
+                    true, System.nanoTime() - start);
+            scheduleSnapshot(sources, next);
+        }
+        fireReload(event);
+        return event;
+    }
+
+    public void addReloadListener(Consumer<ReloadEvent> listener) {
+        reloadListeners.add(listener);
+    }
+
+    public void removeReloadListener(Consumer<ReloadEvent> listener) {
+        reloadListeners.remove(listener);
+    }
+
+    /** The most recent reload, or null if nothing has been reloaded yet. */
+    public ReloadEvent getLastReload() {
+        return lastReload;
+    }
+
+    public long getReloadCount() {
+        return reloadCount.get();
+    }
+
+    private void fireReload(ReloadEvent event) {
+        lastReload = event;
+        reloadCount.incrementAndGet();
+        for (Consumer<ReloadEvent> l : reloadListeners) {
+            try {
+                l.accept(event);
+            } catch (RuntimeException e) {
+                e.printStackTrace();
+            }
+        }
     }
 
     // clients.csv: Client ID,First Name,Last Name,Email,Risk Score
-    private void loadClients() throws IOException {
+    private Map<String, Client> readClients() throws IOException {
+        Map<String, Client> out = new HashMap<>();
         Path f = dataDir.resolve("clients.csv");
-        if (!Files.exists(f)) return;
-        try (BufferedReader br = Files.newBufferedReader(f)) {
-            String line = br.readLine(); // header
-            while ((line = br.readLine()) != null) {
-                String[] parts = line.split(",");
-                if (parts.length < 5) continue;
-                String id = parts[0].trim();
-                String first = parts[1].trim();
-                String last = parts[2].trim();
-                String email = parts[3].trim();
-                int risk = Integer.parseInt(parts[4].trim());
-                clients.put(id, new Client(id, first, last, email, risk));
+        if (!Files.exists(f)) return out;
+        try (CsvTokenizer csv = CsvTokenizer.open(f)) {
+            csv.nextRow(); // header
+            while (csv.nextRow()) {
+                if (csv.fieldCount() < 5) continue;
+                String id = csv.field(0);
+                String first = csv.field(1);
+                String last = csv.field(2);
+                String email = csv.field(3);
+                int risk = csv.intField(4);
+                out.put(id, new Client(id, first, last, email, risk));
             }
         }
+        return out;
     }
 
     // advisors.csv: Advisor ID,First Name,Last Name,Email,Desk
-    private void loadAdvisors() throws IOException {
+    private Map<String, Advisor> readAdvisors() throws IOException {
+        Map<String, Advisor> out = new HashMap<>();
         Path f = dataDir.resolve("advisors.csv");
-        if (!Files.exists(f)) return;
-        try (BufferedReader br = Files.newBufferedReader(f)) {
-            String line = br.readLine();
-            while ((line = br.readLine()) != null) {
-                String[] parts = line.split(",");
-                if (parts.length < 5) continue;
-                String id = parts[0].trim();
-                String first = parts[1].trim();
-                String last = parts[2].trim();
-                String email = parts[3].trim();
-                String desk = parts[4].trim();
-                advisors.put(id, new Advisor(id, first, last, email, desk));
+        if (!Files.exists(f)) return out;
+        try (CsvTokenizer csv = CsvTokenizer.open(f)) {
+            csv.nextRow(); // header
+            while (csv.nextRow()) {
+                if (csv.fieldCount() < 5) continue;
+                String id = csv.field(0);
+                String first = csv.field(1);
+                String last = csv.field(2);
+                String email = csv.field(3);
+                String desk = csv.field(4);
+                out.put(id, new Advisor(id, first, last, email, desk));
             }
         }
+        return out;
+    }
+
+    // instruments.csv: Instrument ID,Ticker,Name,Asset Class,Sector (the last two optional)
+    private Map<String, Instrument> readInstruments() throws IOException {
+        Map<String, Instrument> out = new HashMap<>();
+        Path f = dataDir.resolve("instruments.csv");
+        if (!Files.exists(f)) return out;
+        try (CsvTokenizer csv = CsvTokenizer.open(f)) {
+            csv.nextRow(); // header
+            while (csv.nextRow()) {
+                if (csv.fieldCount() < 3) continue;
+                String id = instrumentRegistry.canonical(csv.field(0));
+                String assetClass = csv.fieldCount() > 3 && !csv.isEmpty(3) ? csv.field(3) : null;
+                String sector = csv.fieldCount() > 4 && !csv.isEmpty(4) ? csv.field(4) : null;
+                out.put(id, new Instrument(id, csv.field(1), csv.field(2), assetClass, sector));
+            }
+        }
+        return out;
+    }
+
+    // portfolio_assignments.csv: Portfolio ID,Client ID,Advisor ID
+    private List<PortfolioAssignment> readAssignments() throws IOException {
+        List<PortfolioAssignment> out = new ArrayList<>();
+        Path f = dataDir.resolve("portfolio_assignments.csv");
+        if (!Files.exists(f)) return out;
+        try (CsvTokenizer csv = CsvTokenizer.open(f)) {
+            csv.nextRow(); // header
+            while (csv.nextRow()) {
+                if (csv.fieldCount() < 3) continue;
+                out.add(new PortfolioAssignment(csv.field(0), csv.field(1), csv.field(2)));
+            }
+        }
+        return out;
     }
 
     // portfolio_holdings/Pxxx.csv: Client ID,Instrument ID,Quantity
-    private void loadHoldings() throws IOException {
-        Path dir = dataDir.resolve("portfolio_holdings");
-        if (!Files.exists(dir)) return;
+    private Map<String, List<Holding>> readHoldings(ForkJoinPool pool) throws IOException {
+        Map<String, List<Holding>> out = new HashMap<>();
+        List<Path> files = listCsvFiles(dataDir.resolve("portfolio_holdings"));
+        List<List<Holding>> parsed = parseFiles(files, pool, this::parseHoldingsFile);
+        for (int i = 0; i < files.size(); i++) {
+            out.put(fileId(files.get(i)), parsed.get(i));
+        }
+        return out;
+    }
 
-        try (DirectoryStream<Path> stream = Files.newDirectoryStream(dir, "*.csv")) {
-            for (Path f : stream) {
-                String clientId = f.getFileName().toString().replace(".csv", "");
-                List<Holding> list = new ArrayList<>();
-
-                try (BufferedReader br = Files.newBufferedReader(f)) {
-                    br.readLine(); // skip header
-                    String line;
-                    while ((line = br.readLine()) != null) {
-                        String[] parts = line.split(",");
-                        if (parts.length < 4) continue;
-
-                        String instrumentId = parts[0].trim();
-                        LocalDate datePurchased = LocalDate.parse(parts[1].trim(), DateTimeFormatter.ofPattern("dd/MM/yyyy"));
-                        BigDecimal initialValue = new BigDecimal(parts[2].replace("\"", "").replace(",", "").trim());
-                        BigDecimal qty = new BigDecimal(parts[3].trim());
-
-                        Holding h = new Holding(clientId, instrumentId, qty, datePurchased, initialValue);
-                        list.add(h);
-                    }
-                }
+    private List<Holding> parseHoldingsFile(Path f) throws IOException {
+        String clientId = fileId(f);
+        List<Holding> list = new ArrayList<>();
+
+        try (CsvTokenizer csv = CsvTokenizer.open(f)) {
+            csv.nextRow(); // skip header
+            while (csv.nextRow()) {
+                if (csv.fieldCount() < 4) continue;
+
+                // initial value may be quoted with grouping commas, e.g. "1,250.00"
+                int instrumentIndex = instrumentRegistry.intern(csv.field(0));
+                String instrumentId = instrumentRegistry.idAt(instrumentIndex); // one shared String per instrument
+                LocalDate datePurchased = csv.date(1, CsvTokenizer.DateOrder.DMY);
+                BigDecimal initialValue = csv.decimal(2);
+                BigDecimal qty = csv.decimal(3);
+
+                Holding h = new Holding(clientId, instrumentId, instrumentIndex, qty, datePurchased, initialValue);
+                list.add(h);
+            }
+        }
+        return Collections.unmodifiableList(list);
+    }
+
+
+    // prices/xxx.csv: Date(MM/dd/yyyy),Open,High,Low,Close,...
+    private Map<String, PriceStore.Series> readPrices(ForkJoinPool pool) throws IOException {
+        Map<String, PriceStore.Series> out = new HashMap<>();
+        List<Path> files = listCsvFiles(dataDir.resolve("prices"));
+        List<PriceStore.Series> parsed = parseFiles(files, pool, this::parsePriceFile);
+        for (int i = 0; i < files.size(); i++) {
+            if (parsed.get(i) != null) out.put(fileId(files.get(i)), parsed.get(i));
+        }
+        return out;
+    }
+
+    // null if the closes can't be held as longs; the instrument is left out rather than
+    // failing the whole load
+    private PriceStore.Series parsePriceFile(Path f) throws IOException {
+        String instrumentId = fileId(f);
+        int[] days = new int[256];
+        long[] closes = new long[256];
+        int[] scales = new int[256];
+        int n = 0;
 
-                holdings.put(clientId, list);
+        try (CsvTokenizer csv = CsvTokenizer.open(f)) {
+            csv.nextRow(); // skip header
+            while (csv.nextRow()) {
+                if (csv.fieldCount() < 5) continue;
+
+                if (n == days.length) {
+                    days = Arrays.copyOf(days, n * 2);
+                    closes = Arrays.copyOf(closes, n * 2);
+                    scales = Arrays.copyOf(scales, n * 2);
+                }
+                days[n] = (int) csv.date(0, CsvTokenizer.DateOrder.MDY).toEpochDay();
+                closes[n] = csv.decimalUnscaled(4);
+                scales[n] = csv.lastScale();
+                n++;
             }
+
+            // sorted by date inside the store
+            return PriceStore.Series.build(instrumentId, days, closes, scales, n, offHeapPrices);
+        } catch (ArithmeticException e) {
+            System.err.println("Skipping prices of " + instrumentId + ": " + e.getMessage());
+            return null;
         }
     }
 
+    // --- Load helpers ---
+    private interface IoFunction<A, R> {
+        R apply(A arg) throws IOException;
+    }
 
-    // prices/xxx.csv: Instrument ID,Date(yyyy-MM-dd),Close
-    private void loadPrices() throws IOException {
-        Path dir = dataDir.resolve("prices");
-        if (!Files.exists(dir)) return;
+    private interface IoSupplier<T> {
+        T get() throws IOException;
+    }
 
+    private static String fileId(Path f) {
+        return f.getFileName().toString().replace(".csv", "");
+    }
+
+    private static List<Path> listCsvFiles(Path dir) throws IOException {
+        List<Path> files = new ArrayList<>();
+        if (!Files.exists(dir)) return files;
         try (DirectoryStream<Path> stream = Files.newDirectoryStream(dir, "*.csv")) {
-            for (Path f : stream) {
-                String instrumentId = f.getFileName().toString().replace(".csv", "");
-                List<PricePoint> list = new ArrayList<>();
-
-                try (BufferedReader br = Files.newBufferedReader(f)) {
-                    br.readLine(); // skip header
-                    String line;
-                    while ((line = br.readLine()) != null) {
-                        String[] parts = line.split(",");
-                        if (parts.length < 5) continue;
-
-                        LocalDate d = LocalDate.parse(parts[0].trim(), DateTimeFormatter.ofPattern("MM/dd/yyyy"));
-                        BigDecimal close = new BigDecimal(parts[4].trim());
-                        list.add(new PricePoint(instrumentId, d, close));
-                    }
+            for (Path f : stream) files.add(f);
+        }
+        return files;
+    }
+
+    // results come back in the same order as files; runs inline when pool is null
+    private static <T> List<T> parseFiles(List<Path> files, ForkJoinPool pool, IoFunction<Path, T> parser) throws IOException {
+        if (pool == null) {
+            List<T> out = new ArrayList<>(files.size());
+            for (Path f : files) out.add(parser.apply(f));
+            return out;
+        }
+        List<ForkJoinTask<T>> tasks = new ArrayList<>(files.size());
+        for (Path f : files) {
+            tasks.add(pool.submit(() -> {
+                try {
+                    return parser.apply(f);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
                 }
+            }));
+        }
+        List<T> out = new ArrayList<>(files.size());
+        for (ForkJoinTask<T> t : tasks) {
+            try {
+                out.add(t.join());
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            }
+        }
+        return out;
+    }
+
+    private <T> T timed(String phase, IoSupplier<T> call) throws IOException {
+        long start = System.nanoTime();
+        try {
+            return call.get();
+        } finally {
+            lastLoadTimings.put(phase, System.nanoTime() - start);
+        }
+    }
 
-                list.sort(Comparator.comparing(PricePoint::getDate));
-                prices.put(instrumentId, list);
+    private <T> CompletableFuture<T> phase(ForkJoinPool pool, String name, IoSupplier<T> call) {
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                return timed(name, call);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
             }
+        }, pool);
+    }
+
+    private static <T> T join(CompletableFuture<T> future) throws IOException {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof UncheckedIOException) throw ((UncheckedIOException) cause).getCause();
+            if (cause instanceof RuntimeException) throw (RuntimeException) cause;
+            if (cause instanceof Error) throw (Error) cause;
+            throw e;
         }
     }
 
 
-    // --- Finders used at login ---
+    // --- Finders used at login (hash lookups, see LoginIndex) ---
     public Client findClientByNameEmail(String fullName, String email) {
-        String normalized = fullName.trim().toLowerCase();
-        for (Client c : clients.values()) {
-            String fn = (c.getFirstName() + " " + c.getLastName()).toLowerCase();
-            if (fn.equals(normalized) && c.getEmail().equalsIgnoreCase(email)) return c;
-        }
-        return null;
+        return dataset.getLoginIndex().findClient(fullName, email);
     }
 
     public Advisor findAdvisorByNameEmail(String fullName, String email) {
-        String normalized = fullName.trim().toLowerCase();
-        for (Advisor a : advisors.values()) {
-            String fn = (a.getFirstName() + " " + a.getLastName()).toLowerCase();
-            if (fn.equals(normalized) && a.getEmail().equalsIgnoreCase(email)) return a;
+        return dataset.getLoginIndex().findAdvisor(fullName, email);
+    }
+
+    /**
+     * Single lookup for the login form: the matching client, or else the matching advisor.
+     */
+    public LoginIndex.User findUserByNameEmail(String fullName, String email) {
+        return dataset.getLoginIndex().find(fullName, email);
+    }
+
+    // --- Messages ---
+    // stored in data/messages as a segmented log (see MessageLog); an old flat
+    // messages.csv (userId,timestamp,senderLabel,text) is imported on first use
+    private synchronized MessageLog messageLog() throws IOException {
+        if (messageLog == null) {
+            MessageLog log = MessageLog.open(messageLogDir);
+            if (log.isEmpty() && Files.exists(messagesFile)) MessageLogTool.importCsv(messagesFile, log);
+            messageLog = log;
         }
-        return null;
+        return messageLog;
     }
 
-    // messages CSV format: userId,timestamp,senderLabel,text
     public List<Message> loadMessagesForUser(String userId) {
-        List<Message> out = new ArrayList<>();
-        if (!Files.exists(messagesFile)) return out;
-        try (BufferedReader br = Files.newBufferedReader(messagesFile)) {
-            String line;
-            while ((line = br.readLine()) != null) {
-                String[] p = line.split(",", 4); // split into at most 4 parts
-                if (p.length < 4) continue;
-                String uid = p[0].trim();
-                if (!uid.equals(userId)) continue;
-                String ts = p[1].trim();
-                String sender = p[2].trim();
-                String text = p[3].trim();
-                out.add(new Message(uid, ts, sender, text));
-            }
+        try {
+            return messageLog().read(userId);
         } catch (IOException e) {
             // ignore for prototype
+            return new ArrayList<>();
         }
-        return out;
+    }
+
+    /** The user's most recent messages, oldest first. */
+    public List<Message> loadRecentMessagesForUser(String userId, int count) {
+        try {
+            return messageLog().readLatest(userId, count);
+        } catch (IOException e) {
+            return new ArrayList<>();
+        }
+    }
+
+    /**
+     * A page of the user's messages ending before message number before (negative for the
+     * latest), for paging back through a long conversation.
+     */
+    public MessagePage loadMessagesBefore(String userId, int before, int pageSize) throws IOException {
+        return messageLog().readPageBefore(userId, before, pageSize);
+    }
+
+    /** A page of the user's messages starting at message number from. */
+    public MessagePage loadMessagesFrom(String userId, int from, int pageSize) throws IOException {
+        return messageLog().readPageFrom(userId, from, pageSize);
     }
 
     public void saveMessage(Message m) throws IOException {
-        // ensure dir exists
-        Files.createDirectories(messagesFile.getParent());
-        try (BufferedWriter bw = Files.newBufferedWriter(messagesFile, java.nio.file.StandardOpenOption.CREATE, java.nio.file.StandardOpenOption.APPEND)) {
-            // safe CSV: userId,timestamp,sender,text
-            String line = String.join(",", m.getUserId(), m.getTimestamp(), m.getSenderLabel(), m.getText());
-            bw.write(line);
-            bw.newLine();
+        messageLog().append(m);
+    }
+
+    /**
+     * Queues a message for the background group-commit writer and returns at once.
+     * The future completes when the message has been written (and synced, depending
+     * on the durability set with {@link #configureMessageWriter}).
+     */
+    public CompletableFuture<Void> saveMessageAsync(Message m) {
+        try {
+            return messageWriter().submit(m);
+        } catch (IOException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+
+    /**
+     * Settings for the async writer; only allowed before the first saveMessageAsync call.
+     */
+    public synchronized void configureMessageWriter(long flushIntervalMillis, int batchSize,
+                                                    MessageWriter.Durability durability) {
+        if (messageWriter != null) throw new IllegalStateException("Message writer already started");
+        this.messageFlushMillis = flushIntervalMillis;
+        this.messageBatchSize = batchSize;
+        this.messageDurability = durability;
+    }
+
+    private synchronized MessageWriter messageWriter() throws IOException {
+        if (messageWriter == null) {
+            messageWriter = new MessageWriter(messageLog(), messageFlushMillis, messageBatchSize, messageDurability);
         }
+        return messageWriter;
+    }
+
+    /**
+     * Stops the data watcher, writes a snapshot still pending after a reload, writes out
+     * queued messages and closes the message log.
+     */
+    public void shutdown() {
+        stopWatching();
+        flushSnapshot();
+        synchronized (this) {
+            if (messageWriter != null) {
+                messageWriter.close(); // drains the queue
+                messageWriter = null;
+            }
+            if (messageLog != null) {
+                try {
+                    messageLog.close();
+                } catch (IOException e) {
+                    e.printStackTrace();
+                }
+                messageLog = null;
+            }
+        }
+    }
+
+    // basic getters used elsewhere; each call reads the currently published dataset
+    /** Dense instrument indexes shared by every dataset this loader publishes. */
+    public InstrumentRegistry getInstrumentRegistry() {
+        return instrumentRegistry;
     }
 
-    // basic getters used elsewhere
-    public Map<String, List<PricePoint>> getPrices() { return prices; }
-    public Map<String, List<Holding>> getHoldings() { return holdings; }
+    public Dataset getDataset() { return dataset; }
+    public PriceStore getPriceStore() { return dataset.getPrices(); }
+    /** Legacy view of the price store; PricePoint lists are built lazily per access. */
+    public Map<String, List<PricePoint>> getPrices() { return dataset.getPrices().asPricePointMap(); }
+    public Map<String, List<Holding>> getHoldings() { return dataset.getHoldings(); }
 
 }
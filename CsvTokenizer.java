@@ -0,0 +1,288 @@
+package com.quinpoint.service;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+
+/**
+ * Streaming CSV tokenizer working directly on the file bytes.
+ * Small files are read into a heap buffer, large ones are memory-mapped.
+ * Each call to {@link #nextRow()} only records the byte range of every field,
+ * so nothing is allocated until a field is actually read as a String, date or decimal.
+ *
+ * Quoting follows RFC-4180: a field wrapped in double quotes may contain commas,
+ * line breaks and escaped ("") quotes. Unquoted fields are trimmed like String.trim().
+ */
+public class CsvTokenizer implements Closeable {
+
+    /** Field order of a date column, e.g. DMY for dd/MM/yyyy. */
+    public enum DateOrder {
+        DMY("dd/MM/yyyy", '/'), MDY("MM/dd/yyyy", '/'), YMD("yyyy-MM-dd", '-');
+
+        private final DateTimeFormatter formatter; // for anything not in exactly this shape
+        private final byte separator;
+
+        DateOrder(String pattern, char separator) {
+            this.formatter = DateTimeFormatter.ofPattern(pattern);
+            this.separator = (byte) separator;
+        }
+    }
+
+    private static final int MAP_THRESHOLD = 1 << 20; // map files from 1MB up
+
+    private final ByteBuffer buf;
+    private final int limit;
+    private int pos;
+
+    // per-row field boundaries (end is exclusive), reused between rows
+    private int[] starts = new int[16];
+    private int[] ends = new int[16];
+    private boolean[] escaped = new boolean[16]; // quoted field containing ""
+    private int count;
+    private int lastScale; // scale of the last unscaled() call, -1 if it gave up
+    private byte[] scratch = new byte[64];
+
+    public CsvTokenizer(ByteBuffer buf) {
+        this.buf = buf;
+        this.limit = buf.limit();
+        this.pos = buf.position();
+        // skip UTF-8 BOM
+        if (limit - pos >= 3 && (buf.get(pos) & 0xFF) == 0xEF
+                && (buf.get(pos + 1) & 0xFF) == 0xBB && (buf.get(pos + 2) & 0xFF) == 0xBF) {
+            pos += 3;
+        }
+    }
+
+    public static CsvTokenizer open(Path file) throws IOException {
+        try (FileChannel ch = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = ch.size();
+            if (size > Integer.MAX_VALUE) throw new IOException("CSV file too large: " + file);
+            if (size >= MAP_THRESHOLD) {
+                return new CsvTokenizer(ch.map(FileChannel.MapMode.READ_ONLY, 0, size));
+            }
+            ByteBuffer heap = ByteBuffer.allocate((int) size);
+            while (heap.hasRemaining() && ch.read(heap) >= 0) { }
+            heap.flip();
+            return new CsvTokenizer(heap);
+        }
+    }
+
+    /**
+     * Advances to the next row. Returns false at end of input.
+     * A blank line is returned as a row with a single empty field.
+     */
+    public boolean nextRow() {
+        if (pos >= limit) return false;
+        count = 0;
+        while (true) {
+            int start = pos;
+            int end;
+            boolean esc = false;
+
+            // skip leading blanks so that  "quoted" fields are still recognised
+            int p = pos;
+            while (p < limit && isBlank(buf.get(p))) p++;
+
+            if (p < limit && buf.get(p) == '"') {
+                p++;
+                start = p;
+                while (true) {
+                    if (p >= limit) { end = p; break; }
+                    byte b = buf.get(p);
+                    if (b == '"') {
+                        if (p + 1 < limit && buf.get(p + 1) == '"') { esc = true; p += 2; continue; }
+                        end = p++;
+                        break;
+                    }
+                    p++;
+                }
+                // ignore anything between the closing quote and the separator
+                while (p < limit && buf.get(p) != ',' && buf.get(p) != '\n' && buf.get(p) != '\r') p++;
+            } else {
+                while (p < limit) {
+                    byte b = buf.get(p);
+                    if (b == ',' || b == '\n' || b == '\r') break;
+                    p++;
+                }
+                end = p;
+                while (start < end && isBlank(buf.get(start))) start++;
+                while (end > start && isBlank(buf.get(end - 1))) end--;
+            }
+            addField(start, end, esc);
+
+            if (p >= limit) { pos = p; return true; }
+            byte sep = buf.get(p);
+            if (sep == ',') { pos = p + 1; continue; }
+            // line break: \n, \r or \r\n
+            pos = p + 1;
+            if (sep == '\r' && pos < limit && buf.get(pos) == '\n') pos++;
+            return true;
+        }
+    }
+
+    public int fieldCount() {
+        return count;
+    }
+
+    public boolean isEmpty(int i) {
+        check(i);
+        return starts[i] == ends[i];
+    }
+
+    public String field(int i) {
+        check(i);
+        int len = ends[i] - starts[i];
+        String s = buf.hasArray()
+                ? new String(buf.array(), buf.arrayOffset() + starts[i], len, StandardCharsets.UTF_8)
+                : new String(copy(starts[i], len), 0, len, StandardCharsets.UTF_8);
+        return escaped[i] ? s.replace("\"\"", "\"") : s;
+    }
+
+    public int intField(int i) {
+        check(i);
+        int p = starts[i], end = ends[i];
+        boolean neg = false;
+        if (p < end && (buf.get(p) == '-' || buf.get(p) == '+')) neg = buf.get(p++) == '-';
+        if (p == end || end - p > 9) return Integer.parseInt(field(i));
+        int v = 0;
+        for (; p < end; p++) {
+            int d = buf.get(p) - '0';
+            if (d < 0 || d > 9) return Integer.parseInt(field(i)); // reports the error
+            v = v * 10 + d;
+        }
+        return neg ? -v : v;
+    }
+
+    /**
+     * Parses a plain decimal such as 123.45, -0.5 or a grouped 1,234.50.
+     * The result has the same unscaled value and scale as new BigDecimal(text).
+     */
+    public BigDecimal decimal(int i) {
+        long unscaled = unscaled(i);
+        if (lastScale < 0) return new BigDecimal(field(i).replace(",", ""));
+        return BigDecimal.valueOf(unscaled, lastScale);
+    }
+
+    /**
+     * Unscaled digits of a decimal field, without creating a BigDecimal on the fast path.
+     * The matching scale is available from {@link #lastScale()} straight after the call.
+     * Throws ArithmeticException when the value doesn't fit in a long.
+     */
+    public long decimalUnscaled(int i) {
+        long unscaled = unscaled(i);
+        if (lastScale >= 0) return unscaled;
+        BigDecimal bd = decimal(i);
+        if (bd.scale() < 0) bd = bd.setScale(0);
+        lastScale = bd.scale();
+        return bd.unscaledValue().longValueExact();
+    }
+
+    public int lastScale() {
+        return lastScale;
+    }
+
+    // unscaled digits of a decimal field; lastScale is set to -1 when the fast path can't handle it
+    private long unscaled(int i) {
+        check(i);
+        int p = starts[i], end = ends[i];
+        lastScale = -1;
+        boolean neg = false;
+        if (p < end && (buf.get(p) == '-' || buf.get(p) == '+')) neg = buf.get(p++) == '-';
+        long v = 0;
+        int digits = 0, scale = 0;
+        boolean dot = false;
+        for (; p < end; p++) {
+            byte b = buf.get(p);
+            if (b >= '0' && b <= '9') {
+                if (++digits > 18) return 0;
+                v = v * 10 + (b - '0');
+                if (dot) scale++;
+            } else if (b == '.' && !dot) {
+                dot = true;
+            } else if (b != ',') {
+                return 0; // exponent or garbage: let BigDecimal decide
+            }
+        }
+        if (digits == 0) return 0;
+        lastScale = scale;
+        return neg ? -v : v;
+    }
+
+    /**
+     * The field as a date in the order's pattern. Fields of exactly the pattern's shape
+     * (2-digit day and month, 4-digit year, the order's separator) are read directly; the
+     * rest go to the pattern's DateTimeFormatter, so they're accepted or rejected just as
+     * LocalDate.parse would.
+     */
+    public LocalDate date(int i, DateOrder order) {
+        check(i);
+        int p = starts[i];
+        if (ends[i] - p == 10) {
+            int yearAt = order == DateOrder.YMD ? p : p + 6;
+            int firstAt = order == DateOrder.YMD ? p + 5 : p;
+            int secondAt = order == DateOrder.YMD ? p + 8 : p + 3;
+            int sep1 = order == DateOrder.YMD ? p + 4 : p + 2;
+            int sep2 = order == DateOrder.YMD ? p + 7 : p + 5;
+            int y = digits(yearAt, 4), a = digits(firstAt, 2), b = digits(secondAt, 2); // year 0 isn't a year-of-era
+            if (y >= 1 && a >= 0 && b >= 0 && buf.get(sep1) == order.separator && buf.get(sep2) == order.separator) {
+                try {
+                    return order == DateOrder.DMY ? LocalDate.of(y, b, a) : LocalDate.of(y, a, b);
+                } catch (java.time.DateTimeException ignored) {
+                    // e.g. 31/02: the formatter resolves or reports it as it always has
+                }
+            }
+        }
+        return LocalDate.parse(field(i), order.formatter); // throws DateTimeParseException
+    }
+
+    // the n digits at p as a number, or -1 if any of them isn't a digit
+    private int digits(int p, int n) {
+        int v = 0;
+        for (int k = 0; k < n; k++) {
+            byte ch = buf.get(p + k);
+            if (ch < '0' || ch > '9') return -1;
+            v = v * 10 + (ch - '0');
+        }
+        return v;
+    }
+
+    @Override
+    public void close() {
+        // nothing to release: mapped buffers are unmapped by the GC
+    }
+
+    // --- internals ---
+    private void addField(int start, int end, boolean esc) {
+        if (count == starts.length) {
+            int n = count * 2;
+            starts = java.util.Arrays.copyOf(starts, n);
+            ends = java.util.Arrays.copyOf(ends, n);
+            escaped = java.util.Arrays.copyOf(escaped, n);
+        }
+        starts[count] = start;
+        ends[count] = end;
+        escaped[count] = esc;
+        count++;
+    }
+
+    private byte[] copy(int start, int len) {
+        if (scratch.length < len) scratch = new byte[Math.max(len, scratch.length * 2)];
+        for (int k = 0; k < len; k++) scratch[k] = buf.get(start + k);
+        return scratch;
+    }
+
+    private void check(int i) {
+        if (i < 0 || i >= count) throw new IndexOutOfBoundsException("field " + i + " of " + count);
+    }
+
+    private static boolean isBlank(byte b) {
+        return b == ' ' || b == '\t';
+    }
+}
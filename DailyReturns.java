@@ -0,0 +1,49 @@
+package com.quinpoint.service;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+
+/**
+ * Latest daily P&amp;L of a client's portfolio (newest first) with the best and worst
+ * day of the rolling window and the return over the days shown. Amounts in pounds, 2dp.
+ */
+public final class DailyReturns {
+
+    private final LocalDate[] dates;
+    private final long[] pnlCents;
+    private final LocalDate bestDate;
+    private final long bestCents;
+    private final LocalDate worstDate;
+    private final long worstCents;
+    private final double periodReturn;
+    private final int windowDays;
+
+    DailyReturns(LocalDate[] dates, long[] pnlCents, LocalDate bestDate, long bestCents,
+                 LocalDate worstDate, long worstCents, double periodReturn, int windowDays) {
+        this.dates = dates;
+        this.pnlCents = pnlCents;
+        this.bestDate = bestDate;
+        this.bestCents = bestCents;
+        this.worstDate = worstDate;
+        this.worstCents = worstCents;
+        this.periodReturn = periodReturn;
+        this.windowDays = windowDays;
+    }
+
+    /** Number of days returned, newest at index 0. */
+    public int size() { return dates.length; }
+    public LocalDate getDate(int i) { return dates[i]; }
+    public BigDecimal getPnl(int i) { return BigDecimal.valueOf(pnlCents[i], 2); }
+
+    /** Best and worst day in the rolling window; null dates if there is no P&amp;L yet. */
+    public LocalDate getBestDate() { return bestDate; }
+    public BigDecimal getBestPnl() { return BigDecimal.valueOf(bestCents, 2); }
+    public LocalDate getWorstDate() { return worstDate; }
+    public BigDecimal getWorstPnl() { return BigDecimal.valueOf(worstCents, 2); }
+
+    /** Return over the days returned, e.g. 0.012 for +1.2%; NaN if unknown. */
+    public double getPeriodReturn() { return periodReturn; }
+
+    /** Number of days the best/worst figures are taken from. */
+    public int getWindowDays() { return windowDays; }
+}
@@ -0,0 +1,108 @@
+package com.quinpoint.service;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.*;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Watches the data directory (and its portfolio_holdings/ and prices/ folders) and
+ * hands every batch of changed CSV files to {@link CsvLoaderService#reload}.
+ * Events are collected until the directory has been quiet for the debounce interval,
+ * so a file that is written in several chunks is only re-parsed once.
+ * Runs on its own daemon thread.
+ */
+public class DataDirectoryWatcher implements Closeable {
+
+    private static final List<String> SUB_DIRS = List.of("portfolio_holdings", "prices");
+
+    private final CsvLoaderService loader;
+    private final Path dataDir;
+    private final long debounceMillis;
+    private final WatchService watchService;
+    private final Thread thread;
+    private volatile boolean running;
+
+    public DataDirectoryWatcher(CsvLoaderService loader, Path dataDir, long debounceMillis) throws IOException {
+        this.loader = loader;
+        this.dataDir = dataDir;
+        this.debounceMillis = debounceMillis;
+        this.watchService = dataDir.getFileSystem().newWatchService();
+        register(dataDir);
+        for (String sub : SUB_DIRS) {
+            Path dir = dataDir.resolve(sub);
+            if (Files.isDirectory(dir)) register(dir);
+        }
+        this.thread = new Thread(this::run, "data-watcher");
+        this.thread.setDaemon(true);
+    }
+
+    public void start() {
+        running = true;
+        thread.start();
+    }
+
+    @Override
+    public void close() throws IOException {
+        running = false;
+        watchService.close(); // wakes up the watcher thread
+        thread.interrupt();
+    }
+
+    private void register(Path dir) throws IOException {
+        dir.register(watchService, StandardWatchEventKinds.ENTRY_CREATE,
+                StandardWatchEventKinds.ENTRY_MODIFY, StandardWatchEventKinds.ENTRY_DELETE);
+    }
+
+    private void run() {
+        while (running) {
+            try {
+                Set<Path> changed = new LinkedHashSet<>();
+                boolean overflow = drain(watchService.take(), changed);
+
+                // keep collecting until nothing has happened for debounceMillis
+                WatchKey key;
+                while ((key = watchService.poll(debounceMillis, TimeUnit.MILLISECONDS)) != null) {
+                    overflow |= drain(key, changed);
+                }
+
+                if (overflow) {
+                    loader.reloadAll();
+                } else if (!changed.isEmpty()) {
+                    loader.reload(changed);
+                }
+            } catch (ClosedWatchServiceException | InterruptedException e) {
+                return;
+            } catch (IOException | RuntimeException e) {
+                // keep watching; the next change will be picked up with a fresh reload
+                System.err.println("Data reload failed: " + e);
+            }
+        }
+    }
+
+    // returns true if events were lost and a full reload is needed
+    private boolean drain(WatchKey key, Set<Path> changed) throws IOException {
+        Path dir = (Path) key.watchable();
+        boolean overflow = false;
+        for (WatchEvent<?> event : key.pollEvents()) {
+            if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                overflow = true;
+                continue;
+            }
+            Path p = dir.resolve((Path) event.context());
+            if (dir.equals(dataDir) && SUB_DIRS.contains(p.getFileName().toString())) {
+                // a watched folder appeared or went away: watch it and re-read everything
+                if (event.kind() == StandardWatchEventKinds.ENTRY_MODIFY) continue;
+                if (event.kind() == StandardWatchEventKinds.ENTRY_CREATE && Files.isDirectory(p)) register(p);
+                overflow = true;
+                continue;
+            }
+            if (p.getFileName().toString().endsWith(".csv")) changed.add(p);
+        }
+        key.reset();
+        return overflow;
+    }
+}
@@ -0,0 +1,84 @@
+package com.quinpoint.service;
+
+import com.quinpoint.model.Advisor;
+import com.quinpoint.model.Client;
+import com.quinpoint.model.Holding;
+import com.quinpoint.model.Instrument;
+import com.quinpoint.model.PortfolioAssignment;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Immutable snapshot of everything loaded from the data directory.
+ * {@link CsvLoaderService} publishes a new instance on every load or reload,
+ * so a reader that grabs one Dataset sees a consistent set of maps throughout.
+ */
+public final class Dataset {
+
+    public static final String UNCLASSIFIED = "Other";
+
+    private final long version;
+    private final Map<String, Client> clients;
+    private final Map<String, Advisor> advisors;
+    private final Map<String, List<Holding>> holdings;
+    private final PriceStore prices; // never modified once published
+    private final LoginIndex loginIndex;
+    private final List<PortfolioAssignment> assignments;
+    private final Map<String, List<PortfolioAssignment>> assignmentsByAdvisor;
+    private final Map<String, Instrument> instruments;
+    private final TradingCalendar calendar;
+
+    // the maps and lists are expected to be read-only views already
+    Dataset(long version, Map<String, Client> clients, Map<String, Advisor> advisors,
+            Map<String, List<Holding>> holdings, PriceStore prices, LoginIndex loginIndex,
+            List<PortfolioAssignment> assignments, Map<String, List<PortfolioAssignment>> assignmentsByAdvisor,
+            Map<String, Instrument> instruments, TradingCalendar calendar) {
+        this.version = version;
+        this.clients = clients;
+        this.advisors = advisors;
+        this.holdings = holdings;
+        this.prices = prices;
+        this.loginIndex = loginIndex;
+        this.assignments = assignments;
+        this.assignmentsByAdvisor = assignmentsByAdvisor;
+        this.instruments = instruments;
+        this.calendar = calendar;
+    }
+
+    static Dataset empty(boolean offHeapPrices) {
+        return new Dataset(0, Map.of(), Map.of(), Map.of(), new PriceStore(offHeapPrices), LoginIndex.EMPTY,
+                List.of(), Map.of(), Map.of(), TradingCalendar.EMPTY);
+    }
+
+    /** Increases by one with every published dataset. */
+    public long getVersion() { return version; }
+    public Map<String, Client> getClients() { return clients; }
+    public Map<String, Advisor> getAdvisors() { return advisors; }
+    public Map<String, List<Holding>> getHoldings() { return holdings; }
+    public PriceStore getPrices() { return prices; }
+    public LoginIndex getLoginIndex() { return loginIndex; }
+    /** Rows of portfolio_assignments.csv in file order. */
+    public List<PortfolioAssignment> getAssignments() { return assignments; }
+
+    /** Assignments of one advisor, never null. */
+    public List<PortfolioAssignment> getAssignmentsForAdvisor(String advisorId) {
+        return assignmentsByAdvisor.getOrDefault(advisorId, List.of());
+    }
+
+    /** Trading days of the prices, with every series aligned to them. */
+    public TradingCalendar getCalendar() { return calendar; }
+
+    /** Rows of instruments.csv by instrument id. */
+    public Map<String, Instrument> getInstruments() { return instruments; }
+
+    /** Asset class from instruments.csv, or {@link #UNCLASSIFIED} if it has none. */
+    public String getAssetClass(String instrumentId) {
+        Instrument i = instruments.get(instrumentId);
+        return i == null || i.getAssetClass() == null ? UNCLASSIFIED : i.getAssetClass();
+    }
+
+    Map<String, List<PortfolioAssignment>> assignmentsByAdvisor() {
+        return assignmentsByAdvisor;
+    }
+}
@@ -0,0 +1,366 @@
+package com.quinpoint.service;
+
+import com.quinpoint.model.Advisor;
+import com.quinpoint.model.Client;
+import com.quinpoint.model.Holding;
+import com.quinpoint.model.Instrument;
+import com.quinpoint.model.PortfolioAssignment;
+
+import java.io.*;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.time.LocalDate;
+import java.util.*;
+import java.util.zip.CRC32;
+
+/**
+ * Binary snapshot of everything {@link CsvLoaderService} loads from CSV.
+ *
+ * Layout (big-endian): magic, version, CRC32 of the payload, payload length, payload.
+ * The payload starts with a manifest of the source CSV files (path, size, mtime);
+ * the snapshot is only used when the manifest still matches the files on disk
+ * and the checksum is valid. Price columns are stored as raw int/long blocks so
+ * they can be bulk-copied out of the mapped file.
+ */
+public class DatasetSnapshot {
+
+    private static final long MAGIC = 0x5150534E41500001L; // "QPSNAP" + format
+    private static final int VERSION = 3;
+    private static final int HEADER_BYTES = 8 + 4 + 8 + 8;
+
+    /** A source CSV file as seen when the snapshot was taken. */
+    public static final class SourceFile {
+        private final String path; // relative to the data directory, '/' separated
+        private final long size;
+        private final long modifiedMillis;
+
+        public SourceFile(String path, long size, long modifiedMillis) {
+            this.path = path;
+            this.size = size;
+            this.modifiedMillis = modifiedMillis;
+        }
+
+        public String getPath() { return path; }
+        public long getSize() { return size; }
+        public long getModifiedMillis() { return modifiedMillis; }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof SourceFile)) return false;
+            SourceFile f = (SourceFile) o;
+            return size == f.size && modifiedMillis == f.modifiedMillis && path.equals(f.path);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(path, size, modifiedMillis);
+        }
+    }
+
+    /** Data read back from a snapshot. */
+    public static final class Contents {
+        public final Map<String, Client> clients = new HashMap<>();
+        public final Map<String, Advisor> advisors = new HashMap<>();
+        public final Map<String, List<Holding>> holdings = new HashMap<>();
+        public final List<PriceStore.Series> prices = new ArrayList<>();
+        public final List<PortfolioAssignment> assignments = new ArrayList<>();
+        public final Map<String, Instrument> instruments = new HashMap<>();
+    }
+
+    private DatasetSnapshot() {
+    }
+
+    /**
+     * Size and mtime of every CSV file the loader reads, sorted by path.
+     */
+    public static List<SourceFile> scanSources(Path dataDir) throws IOException {
+        List<SourceFile> out = new ArrayList<>();
+        addSource(out, dataDir, dataDir.resolve("clients.csv"));
+        addSource(out, dataDir, dataDir.resolve("advisors.csv"));
+        addSource(out, dataDir, dataDir.resolve("portfolio_assignments.csv"));
+        addSource(out, dataDir, dataDir.resolve("instruments.csv"));
+        for (String sub : List.of("portfolio_holdings", "prices")) {
+            Path dir = dataDir.resolve(sub);
+            if (!Files.isDirectory(dir)) continue;
+            try (DirectoryStream<Path> stream = Files.newDirectoryStream(dir, "*.csv")) {
+                for (Path f : stream) addSource(out, dataDir, f);
+            }
+        }
+        out.sort(Comparator.comparing(SourceFile::getPath));
+        return out;
+    }
+
+    private static void addSource(List<SourceFile> out, Path dataDir, Path f) throws IOException {
+        if (!Files.isRegularFile(f)) return;
+        BasicFileAttributes attrs = Files.readAttributes(f, BasicFileAttributes.class);
+        String rel = dataDir.relativize(f).toString().replace(File.separatorChar, '/');
+        out.add(new SourceFile(rel, attrs.size(), attrs.lastModifiedTime().toMillis()));
+    }
+
+    /**
+     * Writes a snapshot atomically: the data goes to a temp file first, which is then
+     * moved over the target.
+     */
+    public static void write(Path file, List<SourceFile> sources,
+                             Map<String, Client> clients, Map<String, Advisor> advisors,
+                             Map<String, List<Holding>> holdings, PriceStore prices,
+                             List<PortfolioAssignment> assignments, Map<String, Instrument> instruments)
+            throws IOException {
+        Files.createDirectories(file.toAbsolutePath().getParent());
+        Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+
+        CRC32 crc = new CRC32();
+        long payloadBytes;
+        try (FileChannel ch = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            ch.position(HEADER_BYTES);
+            CountingOutput counter = new CountingOutput(Channels.newOutputStream(ch), crc);
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(counter, 1 << 16));
+
+            out.writeInt(sources.size());
+            for (SourceFile s : sources) {
+                writeString(out, s.getPath());
+                out.writeLong(s.getSize());
+                out.writeLong(s.getModifiedMillis());
+            }
+
+            out.writeInt(clients.size());
+            for (Client c : clients.values()) {
+                writeString(out, c.getId());
+                writeString(out, c.getFirstName());
+                writeString(out, c.getLastName());
+                writeString(out, c.getEmail());
+                out.writeInt(c.getRiskScore());
+            }
+
+            out.writeInt(advisors.size());
+            for (Advisor a : advisors.values()) {
+                writeString(out, a.getId());
+                writeString(out, a.getFirstName());
+                writeString(out, a.getLastName());
+                writeString(out, a.getEmail());
+                writeString(out, a.getDesk());
+            }
+
+            out.writeInt(holdings.size());
+            for (Map.Entry<String, List<Holding>> e : holdings.entrySet()) {
+                writeString(out, e.getKey());
+                out.writeInt(e.getValue().size());
+                for (Holding h : e.getValue()) {
+                    writeString(out, h.getClientId());
+                    writeString(out, h.getInstrumentId());
+                    writeDecimal(out, h.getQuantity());
+                    LocalDate d = h.getDatePurchased();
+                    out.writeBoolean(d != null);
+                    if (d != null) out.writeLong(d.toEpochDay());
+                    writeDecimal(out, h.getInitialValue());
+                }
+            }
+
+            out.writeInt(prices.size());
+            for (String id : prices.instrumentIds()) {
+                PriceStore.Series s = prices.get(id);
+                writeString(out, id);
+                out.writeInt(s.getScale());
+                out.writeInt(s.size());
+                ByteBuffer block = ByteBuffer.allocate(s.size() * (Integer.BYTES + Long.BYTES));
+                for (int i = 0; i < s.size(); i++) block.putInt(s.getEpochDay(i));
+                for (int i = 0; i < s.size(); i++) block.putLong(s.getUnscaledClose(i));
+                out.write(block.array());
+            }
+
+            out.writeInt(assignments.size());
+            for (PortfolioAssignment pa : assignments) {
+                writeString(out, pa.getPortfolioId());
+                writeString(out, pa.getClientId());
+                writeString(out, pa.getAdvisorId());
+            }
+
+            out.writeInt(instruments.size());
+            for (Instrument in : instruments.values()) {
+                writeString(out, in.getId());
+                writeString(out, in.getTicker());
+                writeString(out, in.getName());
+                writeNullableString(out, in.getAssetClass());
+                writeNullableString(out, in.getSector());
+            }
+            out.flush();
+            payloadBytes = counter.count;
+
+            // header goes at the start of the file now that the checksum is known
+            ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+            header.putLong(MAGIC).putInt(VERSION).putLong(crc.getValue()).putLong(payloadBytes).flip();
+            long at = 0;
+            while (header.hasRemaining()) at += ch.write(header, at);
+            ch.force(true);
+        }
+        try {
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    /**
+     * Maps and decodes a snapshot. Returns null when the file is missing, was taken from
+     * different source files, or fails validation; the caller then falls back to CSV.
+     */
+    public static Contents read(Path file, List<SourceFile> expectedSources, boolean offHeapPrices,
+                                InstrumentRegistry registry) throws IOException {
+        if (!Files.isRegularFile(file)) return null;
+        try (FileChannel ch = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = ch.size();
+            if (size < HEADER_BYTES || size > Integer.MAX_VALUE) return null;
+            MappedByteBuffer buf = ch.map(FileChannel.MapMode.READ_ONLY, 0, size);
+
+            if (buf.getLong() != MAGIC || buf.getInt() != VERSION) return null;
+            long checksum = buf.getLong();
+            long payloadBytes = buf.getLong();
+            if (payloadBytes != size - HEADER_BYTES) return null;
+
+            CRC32 crc = new CRC32();
+            crc.update(buf.duplicate());
+            if (crc.getValue() != checksum) return null;
+
+            int sourceCount = buf.getInt();
+            List<SourceFile> sources = new ArrayList<>(sourceCount);
+            for (int i = 0; i < sourceCount; i++) {
+                sources.add(new SourceFile(readString(buf), buf.getLong(), buf.getLong()));
+            }
+            if (!sources.equals(expectedSources)) return null;
+
+            Contents c = new Contents();
+            int n = buf.getInt();
+            for (int i = 0; i < n; i++) {
+                Client client = new Client(readString(buf), readString(buf), readString(buf), readString(buf), buf.getInt());
+                c.clients.put(client.getId(), client);
+            }
+            n = buf.getInt();
+            for (int i = 0; i < n; i++) {
+                Advisor a = new Advisor(readString(buf), readString(buf), readString(buf), readString(buf), readString(buf));
+                c.advisors.put(a.getId(), a);
+            }
+            n = buf.getInt();
+            for (int i = 0; i < n; i++) {
+                String key = readString(buf);
+                int count = buf.getInt();
+                List<Holding> list = new ArrayList<>(count);
+                for (int k = 0; k < count; k++) {
+                    String clientId = readString(buf);
+                    int instrumentIndex = registry.intern(readString(buf));
+                    BigDecimal qty = readDecimal(buf);
+                    LocalDate d = buf.get() != 0 ? LocalDate.ofEpochDay(buf.getLong()) : null;
+                    BigDecimal initial = readDecimal(buf);
+                    list.add(new Holding(clientId, registry.idAt(instrumentIndex), instrumentIndex, qty, d, initial));
+                }
+                c.holdings.put(key, Collections.unmodifiableList(list)); // as the CSV path publishes them
+            }
+            n = buf.getInt();
+            for (int i = 0; i < n; i++) {
+                String id = readString(buf);
+                int scale = buf.getInt();
+                int count = buf.getInt();
+                int[] days = new int[count];
+                long[] closes = new long[count];
+                buf.asIntBuffer().get(days);
+                buf.position(buf.position() + count * Integer.BYTES);
+                buf.asLongBuffer().get(closes);
+                buf.position(buf.position() + count * Long.BYTES);
+                c.prices.add(PriceStore.Series.of(id, days, closes, scale, offHeapPrices));
+            }
+            n = buf.getInt();
+            for (int i = 0; i < n; i++) {
+                c.assignments.add(new PortfolioAssignment(readString(buf), readString(buf), readString(buf)));
+            }
+            n = buf.getInt();
+            for (int i = 0; i < n; i++) {
+                String id = registry.canonical(readString(buf));
+                c.instruments.put(id, new Instrument(id, readString(buf), readString(buf),
+                        readNullableString(buf), readNullableString(buf)));
+            }
+            return c;
+        } catch (BufferUnderflowException | IllegalArgumentException | IndexOutOfBoundsException e) {
+            return null; // truncated or otherwise corrupt
+        }
+    }
+
+    // --- encoding helpers ---
+    private static void writeString(DataOutputStream out, String s) throws IOException {
+        byte[] b = s.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(b.length);
+        out.write(b);
+    }
+
+    private static String readString(ByteBuffer buf) {
+        int len = buf.getInt();
+        byte[] b = new byte[len];
+        buf.get(b);
+        return new String(b, StandardCharsets.UTF_8);
+    }
+
+    // null is written as length -1
+    private static void writeNullableString(DataOutputStream out, String s) throws IOException {
+        if (s == null) out.writeInt(-1); else writeString(out, s);
+    }
+
+    private static String readNullableString(ByteBuffer buf) {
+        int len = buf.getInt();
+        if (len < 0) return null;
+        byte[] b = new byte[len];
+        buf.get(b);
+        return new String(b, StandardCharsets.UTF_8);
+    }
+
+    // null is written as a negative length
+    private static void writeDecimal(DataOutputStream out, BigDecimal d) throws IOException {
+        if (d == null) {
+            out.writeInt(-1);
+            return;
+        }
+        byte[] unscaled = d.unscaledValue().toByteArray();
+        out.writeInt(unscaled.length);
+        out.write(unscaled);
+        out.writeInt(d.scale());
+    }
+
+    private static BigDecimal readDecimal(ByteBuffer buf) {
+        int len = buf.getInt();
+        if (len < 0) return null;
+        byte[] b = new byte[len];
+        buf.get(b);
+        return new BigDecimal(new BigInteger(b), buf.getInt());
+    }
+
+    // tracks bytes written and feeds the checksum
+    private static final class CountingOutput extends FilterOutputStream {
+        private final CRC32 crc;
+        private long count;
+
+        CountingOutput(OutputStream out, CRC32 crc) {
+            super(out);
+            this.crc = crc;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            crc.update(b);
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            crc.update(b, off, len);
+            count += len;
+        }
+    }
+}
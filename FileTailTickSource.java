@@ -0,0 +1,107 @@
+package com.quinpoint.service;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * Tails a text file of ticks, one {@code instrumentId,yyyy-MM-dd,close} per line, like
+ * {@code tail -f}: lines appended to it are read as they arrive. Reading starts at the end
+ * of what's already there. If the file is truncated it's read again from the start.
+ * Runs on its own daemon thread, polling when there's nothing new.
+ */
+public class FileTailTickSource implements TickSource {
+
+    private static final int BUFFER_BYTES = 64 * 1024;
+
+    private final Path file;
+    private final long pollMillis;
+    private final AtomicLong rejected = new AtomicLong();
+    private volatile boolean running;
+    private Thread thread;
+
+    public FileTailTickSource(Path file, long pollMillis) {
+        this.file = file;
+        this.pollMillis = Math.max(1, pollMillis);
+    }
+
+    @Override
+    public synchronized void start(Consumer<PriceTick> sink) throws IOException {
+        if (thread != null) throw new IllegalStateException("Already started");
+        long start = Files.exists(file) ? Files.size(file) : 0;
+        running = true;
+        thread = new Thread(() -> run(sink, start), "tick-tail");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    @Override
+    public long getRejectedCount() {
+        return rejected.get();
+    }
+
+    @Override
+    public synchronized void close() {
+        running = false;
+        if (thread != null) thread.interrupt();
+    }
+
+    private void run(Consumer<PriceTick> sink, long position) {
+        ByteBuffer buf = ByteBuffer.allocate(BUFFER_BYTES);
+        byte[] line = new byte[256];
+        int lineLength = 0;
+        while (running) {
+            try (FileChannel ch = FileChannel.open(file, StandardOpenOption.READ)) {
+                while (running) {
+                    if (ch.size() < position) { // truncated: start over
+                        position = 0;
+                        lineLength = 0;
+                    }
+                    buf.clear();
+                    int n = ch.read(buf, position);
+                    if (n <= 0) {
+                        Thread.sleep(pollMillis);
+                        continue;
+                    }
+                    position += n;
+                    buf.flip();
+                    while (buf.hasRemaining()) {
+                        byte b = buf.get();
+                        if (b == '\n') {
+                            accept(new String(line, 0, lineLength, StandardCharsets.UTF_8), sink);
+                            lineLength = 0;
+                        } else if (b != '\r') {
+                            if (lineLength == line.length) line = Arrays.copyOf(line, line.length * 2);
+                            line[lineLength++] = b;
+                        }
+                    }
+                }
+            } catch (InterruptedException e) {
+                return;
+            } catch (IOException e) {
+                // the file may not exist yet, or is being replaced; try again shortly
+                try {
+                    Thread.sleep(pollMillis);
+                } catch (InterruptedException stop) {
+                    return;
+                }
+            }
+        }
+    }
+
+    private void accept(String line, Consumer<PriceTick> sink) {
+        if (line.isBlank()) return;
+        try {
+            sink.accept(PriceTick.parse(line));
+        } catch (IllegalArgumentException e) {
+            rejected.incrementAndGet();
+        }
+    }
+}
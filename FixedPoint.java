@@ -0,0 +1,68 @@
+package com.quinpoint.service;
+
+import com.quinpoint.model.Holding;
+
+/**
+ * Exact decimal arithmetic on unscaled longs for the valuation hot paths. A number is an
+ * unscaled long and a scale, as in BigDecimal, but nothing is allocated. Every operation
+ * throws ArithmeticException on overflow, so callers can redo the work in BigDecimal.
+ */
+final class FixedPoint {
+
+    private static final long[] POW10 = new long[19];
+
+    static {
+        POW10[0] = 1;
+        for (int i = 1; i < POW10.length; i++) POW10[i] = POW10[i - 1] * 10;
+    }
+
+    private FixedPoint() {
+    }
+
+    static long pow10(int n) {
+        if (n < 0) throw new IllegalArgumentException("negative exponent " + n);
+        if (n >= POW10.length) throw new ArithmeticException("10^" + n + " does not fit in a long");
+        return POW10[n];
+    }
+
+    /** unscaled * 10^-scale in pence, rounded HALF_UP like BigDecimal.setScale(2, HALF_UP). */
+    static long toCents(long unscaled, int scale) {
+        if (scale <= 2) return Math.multiplyExact(unscaled, pow10(2 - scale));
+        long d = pow10(scale - 2);
+        long quot = unscaled / d;
+        long rem = Math.abs(unscaled % d);
+        if (rem >= d - rem) quot += unscaled < 0 ? -1 : 1; // rem * 2 >= d without overflow
+        return quot;
+    }
+
+    /** The holding's quantity unscaled, see {@link Holding#getQuantityScale()}. */
+    static long quantity(Holding h) {
+        if (!h.hasLongQuantity()) throw new ArithmeticException("quantity " + h.getQuantity() + " does not fit in a long");
+        return h.getQuantityUnscaled();
+    }
+
+    /** Exact running sum, kept at the largest scale added so far. */
+    static final class Sum {
+        private long unscaled;
+        private int scale;
+
+        void add(long value, int valueScale) {
+            if (valueScale > scale) {
+                unscaled = Math.multiplyExact(unscaled, pow10(valueScale - scale));
+                scale = valueScale;
+            } else if (valueScale < scale) {
+                value = Math.multiplyExact(value, pow10(scale - valueScale));
+            }
+            unscaled = Math.addExact(unscaled, value);
+        }
+
+        /** Adds close * quantity, e.g. a holding's value at one close. */
+        void addProduct(long close, int closeScale, long quantity, int quantityScale) {
+            add(Math.multiplyExact(close, quantity), closeScale + quantityScale);
+        }
+
+        long cents() {
+            return toCents(unscaled, scale);
+        }
+    }
+}
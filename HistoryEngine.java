@@ -0,0 +1,97 @@
+package com.quinpoint.service;
+
+import com.quinpoint.model.Holding;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Builds a portfolio's value history on the dataset's {@link TradingCalendar}. There is a
+ * point for every trading day from the first close of any holding on; a holding whose
+ * instrument didn't trade that day counts at its last close, and one that hasn't started
+ * trading yet counts nothing. Each holding's aligned closes are read straight from their
+ * array by slot, and close * quantity is added into a primitive long accumulator at one
+ * common scale, so the sum is exact; each day's total is rounded HALF_UP to 2dp once. If
+ * anything would overflow a long the whole call falls back to BigDecimal.
+ */
+public final class HistoryEngine {
+
+    private HistoryEngine() {
+    }
+
+    public static ValueSeries compute(List<Holding> holdings, TradingCalendar calendar) {
+        return compute(holdings, calendar, null, null);
+    }
+
+    /** History between from and to, both inclusive; null bounds are open. */
+    public static ValueSeries compute(List<Holding> holdings, TradingCalendar calendar, LocalDate from, LocalDate to) {
+        int lo = from == null ? 0 : calendar.slotAtOrAfter(from.toEpochDay());
+        int hi = to == null ? calendar.size() : calendar.slotAtOrBefore(to.toEpochDay()) + 1;
+
+        int k = 0;
+        TradingCalendar.Aligned[] aligned = new TradingCalendar.Aligned[holdings.size()];
+        Holding[] held = new Holding[holdings.size()];
+        int begin = hi;
+        for (Holding h : holdings) {
+            TradingCalendar.Aligned a = calendar.aligned(h);
+            if (a == null || a.getFirstSlot() >= hi) continue;
+            aligned[k] = a;
+            held[k++] = h;
+            begin = Math.min(begin, a.getFirstSlot());
+        }
+        begin = Math.max(begin, lo);
+        if (begin >= hi) return ValueSeries.EMPTY;
+
+        int[] days = new int[hi - begin];
+        for (int t = begin; t < hi; t++) days[t - begin] = calendar.getEpochDay(t);
+        try {
+            return computeFixedPoint(aligned, held, k, days, begin, hi);
+        } catch (ArithmeticException overflow) {
+            return computeBigDecimal(aligned, held, k, days, begin, hi);
+        }
+    }
+
+    private static ValueSeries computeFixedPoint(TradingCalendar.Aligned[] aligned, Holding[] holding, int k,
+                                                 int[] days, int begin, int end) {
+        // common scale for all close * quantity products
+        long[] q = new long[k];
+        int[] productScale = new int[k];
+        int scale = 0;
+        for (int i = 0; i < k; i++) {
+            q[i] = FixedPoint.quantity(holding[i]);
+            productScale[i] = aligned[i].getScale() + holding[i].getQuantityScale();
+            scale = Math.max(scale, productScale[i]);
+        }
+
+        long[] sums = new long[end - begin];
+        for (int i = 0; i < k; i++) {
+            long factor = Math.multiplyExact(q[i], FixedPoint.pow10(scale - productScale[i]));
+            long[] closes = aligned[i].closes;
+            int first = aligned[i].getFirstSlot();
+            for (int t = Math.max(begin, first); t < end; t++) {
+                sums[t - begin] = Math.addExact(sums[t - begin], Math.multiplyExact(closes[t - first], factor));
+            }
+        }
+
+        long[] cents = new long[sums.length];
+        for (int j = 0; j < sums.length; j++) cents[j] = FixedPoint.toCents(sums[j], scale);
+        return new ValueSeries(days, cents, days.length);
+    }
+
+    private static ValueSeries computeBigDecimal(TradingCalendar.Aligned[] aligned, Holding[] holding, int k,
+                                                 int[] days, int begin, int end) {
+        BigDecimal[] sums = new BigDecimal[end - begin];
+        Arrays.fill(sums, BigDecimal.ZERO);
+        for (int i = 0; i < k; i++) {
+            for (int t = Math.max(begin, aligned[i].getFirstSlot()); t < end; t++) {
+                sums[t - begin] = sums[t - begin].add(aligned[i].getClose(t).multiply(holding[i].getQuantity()));
+            }
+        }
+        BigDecimal[] values = new BigDecimal[sums.length];
+        for (int j = 0; j < sums.length; j++) values[j] = sums[j].setScale(2, RoundingMode.HALF_UP);
+        return new ValueSeries(days, values, days.length);
+    }
+}
@@ -11,18 +11,43 @@ import java.time.LocalDate;
 public class Holding {
     private final String clientId;        // could be portfolioId in some variants
     private final String instrumentId;
+    private final int instrumentIndex;         // dense id from the loader's InstrumentRegistry, -1 if none
     private final LocalDate datePurchased;     // may be null
     private final BigDecimal quantity;
+    private final long quantityUnscaled;       // quantity as unscaled long + scale, when it fits
+    private final int quantityScale;
+    private final boolean longQuantity;
     private BigDecimal initialValue;
 
 
     public Holding(String clientId, String instrumentId, BigDecimal quantity,
                    LocalDate datePurchased, BigDecimal initialValue) {
+        this(clientId, instrumentId, -1, quantity, datePurchased, initialValue);
+    }
+
+    public Holding(String clientId, String instrumentId, int instrumentIndex, BigDecimal quantity,
+                   LocalDate datePurchased, BigDecimal initialValue) {
         this.clientId = clientId;
         this.instrumentId = instrumentId;
+        this.instrumentIndex = instrumentIndex;
         this.quantity = quantity;
         this.datePurchased = datePurchased;
         this.initialValue = initialValue;
+
+        long unscaled = 0;
+        int scale = 0;
+        boolean fits = false;
+        if (quantity != null) {
+            BigDecimal q = quantity.scale() < 0 ? quantity.setScale(0) : quantity;
+            if (q.precision() <= 18) {
+                unscaled = q.unscaledValue().longValue();
+                scale = q.scale();
+                fits = true;
+            }
+        }
+        this.quantityUnscaled = unscaled;
+        this.quantityScale = scale;
+        this.longQuantity = fits;
     }
 
     // Existing constructor for backwards compatibility
@@ -32,7 +57,12 @@ public class Holding {
 
     public String getClientId() { return clientId; }
     public String getInstrumentId() { return instrumentId; }
+    public int getInstrumentIndex() { return instrumentIndex; }
     public BigDecimal getQuantity() { return quantity; }
+    /** Quantity as an unscaled long at {@link #getQuantityScale()} (0 or more); only valid if {@link #hasLongQuantity()}. */
+    public long getQuantityUnscaled() { return quantityUnscaled; }
+    public int getQuantityScale() { return quantityScale; }
+    public boolean hasLongQuantity() { return longQuantity; }
     public LocalDate getDatePurchased() { return datePurchased; }
     public BigDecimal getInitialValue() { return initialValue; }
 
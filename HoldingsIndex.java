@@ -0,0 +1,107 @@
+package com.quinpoint.service;
+
+import com.quinpoint.model.Holding;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Every holding of a dataset laid out instrument by instrument, for valuing all clients
+ * in one sweep. Instrument g's holdings are rows start[g] to start[g + 1] of the row
+ * columns (client slot, unscaled quantity, quantity scale), and its price series is
+ * resolved once here. Built once per dataset version.
+ */
+final class HoldingsIndex {
+
+    final long version;
+    final String[] clientIds;                 // by client slot
+    final Map<String, Integer> slotByClient;
+    final PriceStore.Series[] series;         // by instrument group, null if unpriced
+    final int[] start;                        // groups + 1 offsets into the rows
+    final int[] rowClient;
+    final long[] rowQuantity;
+    final int[] rowScale;
+    final boolean[] bigQuantity;              // by client slot: a quantity doesn't fit in a long
+
+    private HoldingsIndex(long version, String[] clientIds, Map<String, Integer> slotByClient,
+                          PriceStore.Series[] series, int[] start, int[] rowClient, long[] rowQuantity,
+                          int[] rowScale, boolean[] bigQuantity) {
+        this.version = version;
+        this.clientIds = clientIds;
+        this.slotByClient = slotByClient;
+        this.series = series;
+        this.start = start;
+        this.rowClient = rowClient;
+        this.rowQuantity = rowQuantity;
+        this.rowScale = rowScale;
+        this.bigQuantity = bigQuantity;
+    }
+
+    static HoldingsIndex build(Dataset data, InstrumentRegistry registry) {
+        Map<String, List<Holding>> holdings = data.getHoldings();
+        int clients = holdings.size();
+        String[] clientIds = new String[clients];
+        Map<String, Integer> slotByClient = new HashMap<>(clients * 2);
+        List<Holding>[] lists = newLists(clients);
+
+        int rows = 0;
+        int slot = 0;
+        for (Map.Entry<String, List<Holding>> e : holdings.entrySet()) {
+            clientIds[slot] = e.getKey();
+            lists[slot] = e.getValue();
+            slotByClient.put(e.getKey(), slot++);
+            rows += e.getValue().size();
+        }
+        // group number per holding: its registry index, or a number after those for unknown ids
+        int dense = registry.size();
+        Map<String, Integer> extraGroups = new HashMap<>();
+        int[] groupOfRow = new int[rows];
+        int r = 0;
+        for (List<Holding> list : lists) {
+            for (Holding h : list) {
+                int i = h.getInstrumentIndex();
+                if (i < 0 || i >= dense || !registry.idAt(i).equals(h.getInstrumentId())) {
+                    i = dense + extraGroups.computeIfAbsent(h.getInstrumentId(), id -> extraGroups.size());
+                }
+                groupOfRow[r++] = i;
+            }
+        }
+        int groups = dense + extraGroups.size();
+
+        // counting sort of the rows by group
+        int[] start = new int[groups + 1];
+        for (int g : groupOfRow) start[g + 1]++;
+        for (int g = 0; g < groups; g++) start[g + 1] += start[g];
+        int[] next = Arrays.copyOf(start, groups);
+        int[] rowClient = new int[rows];
+        long[] rowQuantity = new long[rows];
+        int[] rowScale = new int[rows];
+        boolean[] bigQuantity = new boolean[clients];
+        PriceStore.Series[] series = new PriceStore.Series[groups];
+        boolean[] resolved = new boolean[groups];
+        r = 0;
+        for (int c = 0; c < clients; c++) {
+            for (Holding h : lists[c]) {
+                int g = groupOfRow[r++];
+                int at = next[g]++;
+                rowClient[at] = c;
+                rowQuantity[at] = h.getQuantityUnscaled();
+                rowScale[at] = h.getQuantityScale();
+                if (!h.hasLongQuantity()) bigQuantity[c] = true;
+                if (!resolved[g]) {
+                    series[g] = data.getPrices().seriesFor(h);
+                    resolved[g] = true;
+                }
+            }
+        }
+        return new HoldingsIndex(data.getVersion(), clientIds, slotByClient, series, start,
+                rowClient, rowQuantity, rowScale, bigQuantity);
+    }
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private static List<Holding>[] newLists(int n) {
+        return new List[n];
+    }
+}
@@ -4,16 +4,26 @@ public class Instrument {
     private String id;
     private String ticker;
     private String name;
+    private String assetClass; // e.g. Equity, Bond; may be null
+    private String sector;     // may be null
 
     public Instrument(String id, String ticker, String name) {
+        this(id, ticker, name, null, null);
+    }
+
+    public Instrument(String id, String ticker, String name, String assetClass, String sector) {
         this.id = id;
         this.ticker = ticker;
         this.name = name;
+        this.assetClass = assetClass;
+        this.sector = sector;
     }
 
     public String getId() { return id; }
     public String getTicker() { return ticker; }
     public String getName() { return name; }
+    public String getAssetClass() { return assetClass; }
+    public String getSector() { return sector; }
 
     @Override
     public String toString() {
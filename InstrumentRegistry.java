@@ -0,0 +1,54 @@
+package com.quinpoint.service;
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Interns instrument ids into dense int indexes (0, 1, 2, ...) for one loader.
+ * Indexes are handed out on first sight and never reused or reassigned, so a
+ * {@link com.quinpoint.model.Holding} or a {@link PriceStore} slot can keep its index
+ * across reloads. Interning also makes every holding share one String per instrument.
+ */
+public final class InstrumentRegistry {
+
+    private final ConcurrentHashMap<String, Integer> indexes = new ConcurrentHashMap<>();
+    private volatile String[] ids = new String[64];
+    private volatile int size;
+
+    /** Index of the instrument, assigning the next free one if it's new. */
+    public int intern(String instrumentId) {
+        Integer i = indexes.get(instrumentId);
+        if (i != null) return i;
+        synchronized (this) {
+            i = indexes.get(instrumentId);
+            if (i != null) return i;
+            int next = size;
+            if (next == ids.length) ids = Arrays.copyOf(ids, next * 2);
+            ids[next] = instrumentId;
+            size = next + 1; // publish the id before the index can be seen
+            indexes.put(instrumentId, next);
+            return next;
+        }
+    }
+
+    /** Index of the instrument, or -1 if it has never been interned. */
+    public int indexOf(String instrumentId) {
+        Integer i = indexes.get(instrumentId);
+        return i == null ? -1 : i;
+    }
+
+    /** The interned id String for an index. */
+    public String idAt(int index) {
+        if (index < 0 || index >= size) throw new IndexOutOfBoundsException("index " + index + " of " + size);
+        return ids[index];
+    }
+
+    /** Interned copy of instrumentId, so equal ids share one String. */
+    public String canonical(String instrumentId) {
+        return idAt(intern(instrumentId));
+    }
+
+    public int size() {
+        return size;
+    }
+}
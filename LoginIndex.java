@@ -0,0 +1,190 @@
+package com.quinpoint.service;
+
+import com.quinpoint.model.Advisor;
+import com.quinpoint.model.Client;
+
+import java.util.Collection;
+
+/**
+ * Hash index of clients and advisors by (full name, email), used at login.
+ * Names match case-insensitively after trimming, emails case-insensitively, the same
+ * rules as the old linear scans. Keys are hashed and compared char by char against the
+ * stored first/last name and email, so a lookup doesn't allocate.
+ *
+ * A client and an advisor with the same name and email share one {@link User} entry;
+ * the client wins when the entry is used to log in, as it did before.
+ */
+public final class LoginIndex {
+
+    static final LoginIndex EMPTY = build(java.util.List.of(), java.util.List.of());
+
+    /** One login identity. At least one of client and advisor is set. */
+    public static final class User {
+        private final int hash;
+        private final String firstName;
+        private final String lastName;
+        private final String email;
+        private Client client;
+        private Advisor advisor;
+        private String id;
+        private String name;
+
+        private User(int hash, String firstName, String lastName, String email) {
+            this.hash = hash;
+            this.firstName = firstName;
+            this.lastName = lastName;
+            this.email = email;
+        }
+
+        public Client getClient() { return client; }
+        public Advisor getAdvisor() { return advisor; }
+        public boolean isClient() { return client != null; }
+
+        // details of the client if there is one, otherwise of the advisor
+        public String getId() { return id; }
+        public String getName() { return name; }
+        public String getEmail() { return client != null ? client.getEmail() : advisor.getEmail(); }
+    }
+
+    private final User[] table; // open addressing, linear probing
+    private final int mask;
+    private final int size;
+
+    private LoginIndex(int expected) {
+        int cap = Integer.highestOneBit(Math.max(4, expected * 2 - 1)) << 1;
+        this.table = new User[cap];
+        this.mask = cap - 1;
+        this.size = expected;
+    }
+
+    public static LoginIndex build(Collection<Client> clients, Collection<Advisor> advisors) {
+        LoginIndex idx = new LoginIndex(clients.size() + advisors.size());
+        for (Client c : clients) {
+            User u = idx.entryFor(c.getFirstName(), c.getLastName(), c.getEmail());
+            if (u.client == null) {
+                u.client = c;
+                u.id = c.getId();
+                u.name = c.getName();
+            }
+        }
+        for (Advisor a : advisors) {
+            User u = idx.entryFor(a.getFirstName(), a.getLastName(), a.getEmail());
+            if (u.advisor == null) {
+                u.advisor = a;
+                if (u.client == null) {
+                    u.id = a.getId();
+                    u.name = a.getName();
+                }
+            }
+        }
+        return idx;
+    }
+
+    /** Number of clients and advisors the index was built from. */
+    public int size() {
+        return size;
+    }
+
+    /** Client or advisor with this name and email, client first; null if neither. */
+    public User find(CharSequence fullName, CharSequence email) {
+        int start = trimStart(fullName), end = trimEnd(fullName);
+        int h = mix(hashEmail(email, hashName(fullName, start, end)));
+        for (int i = h & mask; ; i = (i + 1) & mask) {
+            User u = table[i];
+            if (u == null) return null;
+            if (u.hash == h && nameMatches(u, fullName, start, end) && equalsIgnoreCase(u.email, email)) return u;
+        }
+    }
+
+    public Client findClient(CharSequence fullName, CharSequence email) {
+        User u = find(fullName, email);
+        return u == null ? null : u.client;
+    }
+
+    public Advisor findAdvisor(CharSequence fullName, CharSequence email) {
+        User u = find(fullName, email);
+        return u == null ? null : u.advisor;
+    }
+
+    // existing entry for the key, or a new one in the first free slot
+    private User entryFor(String first, String last, String email) {
+        int h = entryHash(first, last, email);
+        int i = h & mask;
+        for (; table[i] != null; i = (i + 1) & mask) {
+            User u = table[i];
+            if (u.hash == h && foldEquals(u.firstName, first) && foldEquals(u.lastName, last)
+                    && equalsIgnoreCase(u.email, email)) {
+                return u;
+            }
+        }
+        return table[i] = new User(h, first, last, email);
+    }
+
+    // --- hashing: entries hash "first last" exactly the way a typed full name is hashed ---
+    private static int entryHash(String first, String last, String email) {
+        int h = 0;
+        for (int i = 0; i < first.length(); i++) h = 31 * h + fold(first.charAt(i));
+        h = 31 * h + ' ';
+        for (int i = 0; i < last.length(); i++) h = 31 * h + fold(last.charAt(i));
+        return mix(hashEmail(email, h));
+    }
+
+    private static int hashName(CharSequence s, int start, int end) {
+        int h = 0;
+        for (int i = start; i < end; i++) h = 31 * h + fold(s.charAt(i));
+        return h;
+    }
+
+    private static int hashEmail(CharSequence email, int h) {
+        h = 31 * h + 0x1F; // separator between name and email
+        for (int i = 0; i < email.length(); i++) h = 31 * h + fold(email.charAt(i));
+        return h;
+    }
+
+    private static int mix(int h) {
+        return h ^ (h >>> 16);
+    }
+
+    private static boolean nameMatches(User u, CharSequence s, int start, int end) {
+        int fl = u.firstName.length(), ll = u.lastName.length();
+        if (end - start != fl + 1 + ll) return false;
+        for (int i = 0; i < fl; i++) {
+            if (fold(u.firstName.charAt(i)) != fold(s.charAt(start + i))) return false;
+        }
+        if (s.charAt(start + fl) != ' ') return false;
+        for (int i = 0; i < ll; i++) {
+            if (fold(u.lastName.charAt(i)) != fold(s.charAt(start + fl + 1 + i))) return false;
+        }
+        return true;
+    }
+
+    private static boolean foldEquals(String a, String b) {
+        return a.length() == b.length() && equalsIgnoreCase(a, b);
+    }
+
+    private static boolean equalsIgnoreCase(String a, CharSequence b) {
+        if (a.length() != b.length()) return false;
+        for (int i = 0; i < a.length(); i++) {
+            if (fold(a.charAt(i)) != fold(b.charAt(i))) return false;
+        }
+        return true;
+    }
+
+    // same folding String.equalsIgnoreCase uses
+    private static char fold(char c) {
+        return Character.toLowerCase(Character.toUpperCase(c));
+    }
+
+    // String.trim() bounds
+    private static int trimStart(CharSequence s) {
+        int i = 0;
+        while (i < s.length() && s.charAt(i) <= ' ') i++;
+        return i;
+    }
+
+    private static int trimEnd(CharSequence s) {
+        int i = s.length();
+        while (i > 0 && s.charAt(i - 1) <= ' ') i--;
+        return i;
+    }
+}
@@ -0,0 +1,407 @@
+package com.quinpoint.service;
+
+import com.quinpoint.model.Message;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only message store split into numbered segment files, with a per-user
+ * index of record positions kept in messages.idx next to the segments.
+ *
+ * Record layout: payload length, CRC32 of the payload, then userId, timestamp,
+ * sender and text as length-prefixed UTF-8. A position packs the segment number
+ * into the high bits and the byte offset into the low 40 bits.
+ *
+ * Opening a user's conversation only reads that user's records. On open, anything
+ * written to the segments but missing from the index (e.g. after a crash) is
+ * re-indexed, and a torn record at the end of the last segment is cut off. An unreadable
+ * record in an earlier segment fails the open instead; nothing there is deleted.
+ */
+public class MessageLog implements Closeable {
+
+    public static final long DEFAULT_SEGMENT_BYTES = 8L << 20;
+    static final String INDEX_FILE = "messages.idx";
+    private static final String SEGMENT_PREFIX = "segment-";
+    private static final String SEGMENT_SUFFIX = ".log";
+    private static final int OFFSET_BITS = 40;
+    private static final long OFFSET_MASK = (1L << OFFSET_BITS) - 1;
+    private static final int HEADER_BYTES = 8;
+    public static final int MAX_USER_ID_BYTES = 0xFFFF; // the index stores the id's length in an unsigned short
+
+    private final Path dir;
+    private final long segmentBytes;
+    private final Map<String, Positions> index = new HashMap<>();
+    private final Map<Integer, FileChannel> channels = new HashMap<>();
+    private FileChannel indexOut;
+    private int activeSegment;
+    private int unsyncedFrom; // lowest segment written since the last sync
+    private long activeSize;
+    private long recordCount;
+
+    private MessageLog(Path dir, long segmentBytes) {
+        this.dir = dir;
+        this.segmentBytes = segmentBytes;
+    }
+
+    public static MessageLog open(Path dir) throws IOException {
+        return open(dir, DEFAULT_SEGMENT_BYTES);
+    }
+
+    public static MessageLog open(Path dir, long segmentBytes) throws IOException {
+        MessageLog log = new MessageLog(dir, segmentBytes);
+        log.load();
+        return log;
+    }
+
+    public Path getDirectory() {
+        return dir;
+    }
+
+    public synchronized long size() {
+        return recordCount;
+    }
+
+    public synchronized boolean isEmpty() {
+        return recordCount == 0;
+    }
+
+    public synchronized int count(String userId) {
+        Positions p = index.get(userId);
+        return p == null ? 0 : p.size;
+    }
+
+    public synchronized Set<String> users() {
+        return new HashSet<>(index.keySet());
+    }
+
+    /** Appends a message and indexes it. The data is handed to the OS but not fsynced. */
+    public synchronized void append(Message m) throws IOException {
+        appendAll(List.of(m));
+    }
+
+    /**
+     * Appends several messages with one gathering write per segment and one index write,
+     * which is what makes group commits cheap. See {@link #append(Message)}. Nothing is
+     * written if a userId is longer than {@link #MAX_USER_ID_BYTES} in UTF-8.
+     */
+    public synchronized void appendAll(Collection<Message> messages) throws IOException {
+        int n = messages.size();
+        if (n == 0) return;
+        ByteBuffer[] records = new ByteBuffer[n];
+        String[] users = new String[n];
+        long[] positions = new long[n];
+        int k = 0;
+        for (Message m : messages) {
+            records[k] = encode(m);
+            users[k++] = m.getUserId();
+        }
+
+        int i = 0;
+        while (i < n) {
+            if (activeSize > 0 && activeSize + records[i].remaining() > segmentBytes) {
+                activeSegment++;
+                activeSize = 0;
+            }
+            // take as many records as fit in the current segment (at least one)
+            long end = activeSize;
+            int j = i;
+            while (j < n && (j == i || end + records[j].remaining() <= segmentBytes)) {
+                positions[j] = ((long) activeSegment << OFFSET_BITS) | end;
+                end += records[j].remaining();
+                j++;
+            }
+            FileChannel ch = channel(activeSegment);
+            ch.position(activeSize);
+            long remaining = end - activeSize;
+            while (remaining > 0) remaining -= ch.write(records, i, j - i);
+            activeSize = end;
+            i = j;
+        }
+
+        writeIndexEntries(users, positions);
+        for (int r = 0; r < n; r++) addToIndex(users[r], positions[r]);
+    }
+
+    /**
+     * Forces segment and index data to disk: every segment written since the last sync
+     * (a group commit can span several), then the index that points into them.
+     */
+    public synchronized void sync() throws IOException {
+        for (int seg = unsyncedFrom; seg <= activeSegment; seg++) channel(seg).force(false);
+        indexOut.force(false);
+        unsyncedFrom = activeSegment;
+    }
+
+    /** All messages of a user, oldest first. */
+    public synchronized List<Message> read(String userId) throws IOException {
+        return readRange(userId, 0, Integer.MAX_VALUE);
+    }
+
+    /** The most recent n messages of a user, oldest first. */
+    public synchronized List<Message> readLatest(String userId, int n) throws IOException {
+        int total = count(userId);
+        return readRange(userId, Math.max(0, total - n), total);
+    }
+
+    /**
+     * Messages from..to (exclusive) of a user, counted from the oldest one,
+     * returned oldest first.
+     */
+    public synchronized List<Message> readRange(String userId, int from, int to) throws IOException {
+        Positions p = index.get(userId);
+        if (p == null) return new ArrayList<>();
+        int end = Math.min(to, p.size);
+        List<Message> out = new ArrayList<>(Math.max(0, end - from));
+        for (int i = Math.max(0, from); i < end; i++) out.add(readAt(p.values[i]));
+        return out;
+    }
+
+    /**
+     * Up to pageSize messages of a user ending just before message number before, or the
+     * latest ones if before is negative, read with the user's count in one go.
+     */
+    public synchronized MessagePage readPageBefore(String userId, int before, int pageSize) throws IOException {
+        int total = count(userId);
+        int to = before < 0 ? total : Math.min(before, total);
+        int from = Math.max(0, to - pageSize);
+        return new MessagePage(readRange(userId, from, to), from, total);
+    }
+
+    /** Up to pageSize messages of a user starting at message number from. */
+    public synchronized MessagePage readPageFrom(String userId, int from, int pageSize) throws IOException {
+        int total = count(userId);
+        int start = Math.max(0, Math.min(from, total));
+        return new MessagePage(readRange(userId, start, start + pageSize), start, total);
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        for (FileChannel ch : channels.values()) ch.close();
+        channels.clear();
+        if (indexOut != null) indexOut.close();
+    }
+
+    // --- writing ---
+    private void writeIndexEntries(String[] users, long[] positions) throws IOException {
+        byte[][] ids = new byte[users.length][];
+        int len = 0;
+        for (int i = 0; i < users.length; i++) {
+            ids[i] = users[i].getBytes(StandardCharsets.UTF_8);
+            len += 2 + ids[i].length + 8;
+        }
+        ByteBuffer b = ByteBuffer.allocate(len);
+        for (int i = 0; i < users.length; i++) b.putShort((short) ids[i].length).put(ids[i]).putLong(positions[i]);
+        b.flip();
+        while (b.hasRemaining()) indexOut.write(b);
+    }
+
+    private void addToIndex(String userId, long pos) {
+        index.computeIfAbsent(userId, k -> new Positions()).add(pos);
+        recordCount++;
+    }
+
+    static ByteBuffer encode(Message m) {
+        byte[][] parts = {
+                utf8(m.getUserId()), utf8(m.getTimestamp()), utf8(m.getSenderLabel()), utf8(m.getText())
+        };
+        if (parts[0].length > MAX_USER_ID_BYTES) {
+            throw new IllegalArgumentException("userId longer than " + MAX_USER_ID_BYTES + " bytes");
+        }
+        int len = 0;
+        for (byte[] p : parts) len += 4 + p.length;
+        ByteBuffer b = ByteBuffer.allocate(HEADER_BYTES + len);
+        b.putInt(len).putInt(0);
+        for (byte[] p : parts) b.putInt(p.length).put(p);
+        CRC32 crc = new CRC32();
+        crc.update(b.array(), HEADER_BYTES, len);
+        b.putInt(4, (int) crc.getValue());
+        b.flip();
+        return b;
+    }
+
+    private static byte[] utf8(String s) {
+        return (s == null ? "" : s).getBytes(StandardCharsets.UTF_8);
+    }
+
+    // --- reading ---
+    private Message readAt(long pos) throws IOException {
+        Message m = readRecord(channel(segmentOf(pos)), pos & OFFSET_MASK);
+        if (m == null) throw new IOException("Corrupt message record at " + Long.toHexString(pos));
+        return m;
+    }
+
+    // decodes the record at offset, or returns null if it is incomplete or fails its checksum
+    private static Message readRecord(FileChannel ch, long offset) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+        if (!readFully(ch, header, offset)) return null;
+        int len = header.getInt(0);
+        int crcValue = header.getInt(4);
+        if (len < 16 || offset + HEADER_BYTES + len > ch.size()) return null;
+        ByteBuffer payload = ByteBuffer.allocate(len);
+        if (!readFully(ch, payload, offset + HEADER_BYTES)) return null;
+        CRC32 crc = new CRC32();
+        crc.update(payload.array(), 0, len);
+        if ((int) crc.getValue() != crcValue) return null;
+        payload.flip();
+        try {
+            return new Message(readString(payload), readString(payload), readString(payload), readString(payload));
+        } catch (RuntimeException e) {
+            return null;
+        }
+    }
+
+    static int recordLength(FileChannel ch, long offset) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(4);
+        if (!readFully(ch, header, offset)) throw new EOFException();
+        return HEADER_BYTES + header.getInt(0);
+    }
+
+    private static String readString(ByteBuffer b) {
+        int n = b.getInt();
+        String s = new String(b.array(), b.position(), n, StandardCharsets.UTF_8);
+        b.position(b.position() + n);
+        return s;
+    }
+
+    private static boolean readFully(FileChannel ch, ByteBuffer b, long offset) throws IOException {
+        while (b.hasRemaining()) {
+            int n = ch.read(b, offset + b.position());
+            if (n < 0) return false;
+        }
+        return true;
+    }
+
+    // --- opening and recovery ---
+    private void load() throws IOException {
+        Files.createDirectories(dir);
+        List<Integer> segments = listSegments(dir);
+        activeSegment = segments.isEmpty() ? 1 : segments.get(segments.size() - 1);
+
+        long lastIndexed = readIndexFile();
+        if (lastIndexed >= 0 && readRecord(channel(segmentOf(lastIndexed)), lastIndexed & OFFSET_MASK) == null) {
+            // index points past the data (e.g. segments restored from a backup): start over
+            index.clear();
+            recordCount = 0;
+            indexOut.truncate(0);
+            indexOut.position(0);
+            lastIndexed = -1;
+        }
+
+        // index whatever was appended after the last indexed record
+        long resumeAt;
+        if (lastIndexed < 0) {
+            resumeAt = segments.isEmpty() ? -1 : ((long) segments.get(0) << OFFSET_BITS);
+        } else {
+            int seg = segmentOf(lastIndexed);
+            long off = lastIndexed & OFFSET_MASK;
+            resumeAt = ((long) seg << OFFSET_BITS) | (off + recordLength(channel(seg), off));
+        }
+        if (resumeAt >= 0) {
+            for (int seg : segments) {
+                if (seg < segmentOf(resumeAt)) continue;
+                long off = seg == segmentOf(resumeAt) ? resumeAt & OFFSET_MASK : 0;
+                FileChannel ch = channel(seg);
+                while (off < ch.size()) {
+                    Message m = readRecord(ch, off);
+                    if (m == null) break;
+                    long pos = ((long) seg << OFFSET_BITS) | off;
+                    writeIndexEntries(new String[] {m.getUserId()}, new long[] {pos});
+                    addToIndex(m.getUserId(), pos);
+                    off += recordLength(ch, off);
+                }
+                if (off < ch.size()) {
+                    if (seg != activeSegment) {
+                        // an earlier segment is never appended to again, so a bad record there
+                        // isn't a torn write; leave the data alone for someone to look at
+                        throw new IOException("Corrupt message record in " + segmentPath(dir, seg).getFileName()
+                                + " at offset " + off);
+                    }
+                    // torn write: drop the partial record so new appends follow the last good one
+                    ch.truncate(off);
+                }
+            }
+        }
+        activeSize = channel(activeSegment).size();
+        // records re-indexed above may not have reached the disk either
+        unsyncedFrom = resumeAt >= 0 ? Math.min(segmentOf(resumeAt), activeSegment) : activeSegment;
+    }
+
+    // loads messages.idx, returning the last indexed position or -1 if there is none
+    private long readIndexFile() throws IOException {
+        Path idx = dir.resolve(INDEX_FILE);
+        indexOut = FileChannel.open(idx, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        long size = indexOut.size();
+        long last = -1;
+        long good = 0;
+        if (size > 0) {
+            ByteBuffer b = indexOut.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            while (b.remaining() >= 2) {
+                int n = b.getShort() & 0xFFFF;
+                if (b.remaining() < n + 8) break;
+                byte[] id = new byte[n];
+                b.get(id);
+                long pos = b.getLong();
+                addToIndex(new String(id, StandardCharsets.UTF_8), pos);
+                last = Math.max(last, pos);
+                good = b.position();
+            }
+        }
+        if (good < size) indexOut.truncate(good);
+        indexOut.position(good);
+        return last;
+    }
+
+    static List<Integer> listSegments(Path dir) throws IOException {
+        List<Integer> out = new ArrayList<>();
+        if (!Files.isDirectory(dir)) return out;
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(dir, SEGMENT_PREFIX + "*" + SEGMENT_SUFFIX)) {
+            for (Path f : stream) {
+                String name = f.getFileName().toString();
+                try {
+                    out.add(Integer.parseInt(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length())));
+                } catch (NumberFormatException ignored) {
+                    // not one of ours
+                }
+            }
+        }
+        Collections.sort(out);
+        return out;
+    }
+
+    static Path segmentPath(Path dir, int segment) {
+        return dir.resolve(String.format("%s%06d%s", SEGMENT_PREFIX, segment, SEGMENT_SUFFIX));
+    }
+
+    private FileChannel channel(int segment) throws IOException {
+        FileChannel ch = channels.get(segment);
+        if (ch == null) {
+            ch = FileChannel.open(segmentPath(dir, segment),
+                    StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            channels.put(segment, ch);
+        }
+        return ch;
+    }
+
+    private static int segmentOf(long pos) {
+        return (int) (pos >>> OFFSET_BITS);
+    }
+
+    // growable list of record positions for one user
+    private static final class Positions {
+        long[] values = new long[8];
+        int size;
+
+        void add(long pos) {
+            if (size == values.length) values = Arrays.copyOf(values, size * 2);
+            values[size++] = pos;
+        }
+    }
+}
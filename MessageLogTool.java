@@ -0,0 +1,104 @@
+package com.quinpoint.service;
+
+import com.quinpoint.model.Message;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.file.*;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Stream;
+
+/**
+ * Offline maintenance for a {@link MessageLog} directory. Don't run it while the app is up.
+ *
+ *   import &lt;messages.csv&gt; &lt;logDir&gt;   append an old-style CSV file to the log
+ *   rebuild-index &lt;logDir&gt;             recreate messages.idx from the segments
+ *   compact &lt;logDir&gt;                   rewrite the segments grouped by user, so each
+ *                                        conversation is stored contiguously
+ */
+public class MessageLogTool {
+
+    public static void main(String[] args) throws IOException {
+        if (args.length == 3 && args[0].equals("import")) {
+            try (MessageLog log = MessageLog.open(Path.of(args[2]))) {
+                System.out.println("Imported " + importCsv(Path.of(args[1]), log) + " messages");
+            }
+        } else if (args.length == 2 && args[0].equals("rebuild-index")) {
+            System.out.println("Indexed " + rebuildIndex(Path.of(args[1])) + " messages");
+        } else if (args.length == 2 && args[0].equals("compact")) {
+            System.out.println("Compacted " + compact(Path.of(args[1])) + " messages");
+        } else {
+            System.err.println("usage: import <messages.csv> <logDir> | rebuild-index <logDir> | compact <logDir>");
+        }
+    }
+
+    /**
+     * Appends every row of a messages CSV (userId,timestamp,senderLabel,text) to the log.
+     */
+    public static int importCsv(Path csv, MessageLog log) throws IOException {
+        List<Message> batch = new ArrayList<>();
+        int count = 0;
+        try (BufferedReader br = Files.newBufferedReader(csv)) {
+            String line;
+            while ((line = br.readLine()) != null) {
+                String[] p = line.split(",", 4); // text may contain commas
+                if (p.length < 4) continue;
+                batch.add(new Message(p[0].trim(), p[1].trim(), p[2].trim(), p[3].trim()));
+                if (batch.size() == 1000) {
+                    log.appendAll(batch);
+                    count += batch.size();
+                    batch.clear();
+                }
+            }
+        }
+        log.appendAll(batch);
+        log.sync();
+        return count + batch.size();
+    }
+
+    /** Drops messages.idx and lets the log re-index every segment on open. */
+    public static long rebuildIndex(Path dir) throws IOException {
+        Files.deleteIfExists(dir.resolve(MessageLog.INDEX_FILE));
+        try (MessageLog log = MessageLog.open(dir)) {
+            log.sync();
+            return log.size();
+        }
+    }
+
+    /**
+     * Rewrites the log into fresh segments with each user's messages next to each other
+     * (users sorted by id, messages kept in order), then swaps the new files in.
+     */
+    public static long compact(Path dir) throws IOException {
+        Path tmp = dir.resolveSibling(dir.getFileName() + ".compact");
+        deleteTree(tmp);
+        long written = 0;
+        try (MessageLog src = MessageLog.open(dir); MessageLog dst = MessageLog.open(tmp)) {
+            List<String> users = new ArrayList<>(src.users());
+            users.sort(Comparator.naturalOrder());
+            for (String user : users) {
+                List<Message> messages = src.read(user);
+                dst.appendAll(messages);
+                written += messages.size();
+            }
+            dst.sync();
+        }
+        Path old = dir.resolveSibling(dir.getFileName() + ".old");
+        deleteTree(old);
+        Files.move(dir, old);
+        Files.move(tmp, dir);
+        deleteTree(old);
+        return written;
+    }
+
+    private static void deleteTree(Path dir) throws IOException {
+        if (!Files.exists(dir)) return;
+        try (Stream<Path> walk = Files.walk(dir)) {
+            for (Path p : (Iterable<Path>) walk.sorted(Comparator.reverseOrder())::iterator) {
+                Files.delete(p);
+            }
+        }
+    }
+}
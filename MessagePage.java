@@ -0,0 +1,36 @@
+package com.quinpoint.service;
+
+import com.quinpoint.model.Message;
+
+import java.util.List;
+
+/**
+ * A run of one user's messages, oldest first, from {@link MessageLog#readPageBefore} or
+ * {@link MessageLog#readPageFrom}. Messages are numbered from the user's oldest one;
+ * since the log is append-only a number always means the same message, so
+ * {@link #getFrom()} and {@link #getTo()} work as cursors for the pages before and after
+ * this one.
+ */
+public final class MessagePage {
+
+    private final List<Message> messages;
+    private final int from;
+    private final int total;
+
+    MessagePage(List<Message> messages, int from, int total) {
+        this.messages = messages;
+        this.from = from;
+        this.total = total;
+    }
+
+    public List<Message> getMessages() { return messages; }
+    public int size() { return messages.size(); }
+    /** Number of the first message on the page. */
+    public int getFrom() { return from; }
+    /** Number just past the last message on the page. */
+    public int getTo() { return from + messages.size(); }
+    /** The user's message count when the page was read. */
+    public int getTotal() { return total; }
+    public boolean hasOlder() { return from > 0; }
+    public boolean hasNewer() { return getTo() < total; }
+}
@@ -0,0 +1,165 @@
+package com.quinpoint.service;
+
+import com.quinpoint.model.Message;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Background writer that group-commits messages to a {@link MessageLog}.
+ * Callers queue a message and get a future back straight away; a single writer
+ * thread collects whatever arrives within the flush interval (up to the batch size)
+ * and writes it with one append, and one fsync when durability is FSYNC.
+ */
+public class MessageWriter implements Closeable {
+
+    public enum Durability {
+        /** Complete once the batch is written to the OS; a crash of the machine can lose it. */
+        OS_BUFFERED,
+        /** Complete only after the batch has been forced to disk. */
+        FSYNC
+    }
+
+    private static final class Pending {
+        final Message message;
+        final CompletableFuture<Void> done = new CompletableFuture<>();
+
+        Pending(Message message) {
+            this.message = message;
+        }
+    }
+
+    private static final Pending STOP = new Pending(null);
+
+    private final MessageLog log;
+    private final long flushIntervalMillis;
+    private final int maxBatch;
+    private final Durability durability;
+    private final BlockingQueue<Pending> queue = new LinkedBlockingQueue<>();
+    private final Thread thread;
+    private volatile boolean closed;
+
+    private final AtomicLong messagesWritten = new AtomicLong();
+    private final AtomicLong batchesWritten = new AtomicLong();
+
+    public MessageWriter(MessageLog log, long flushIntervalMillis, int maxBatch, Durability durability) {
+        if (maxBatch < 1) throw new IllegalArgumentException("maxBatch must be at least 1");
+        this.log = log;
+        this.flushIntervalMillis = Math.max(0, flushIntervalMillis);
+        this.maxBatch = maxBatch;
+        this.durability = durability;
+        this.thread = new Thread(this::run, "message-writer");
+        this.thread.setDaemon(true);
+        this.thread.start();
+    }
+
+    /**
+     * Queues a message. The future completes when the message is in the log,
+     * or exceptionally if the write failed or the writer is closed.
+     */
+    public CompletableFuture<Void> submit(Message m) {
+        Pending p = new Pending(m);
+        String userId = m.getUserId();
+        if (userId != null && userId.getBytes(StandardCharsets.UTF_8).length > MessageLog.MAX_USER_ID_BYTES) {
+            // would fail the whole group it's written with
+            p.done.completeExceptionally(new IllegalArgumentException(
+                    "userId longer than " + MessageLog.MAX_USER_ID_BYTES + " bytes"));
+            return p.done;
+        }
+        synchronized (this) {
+            if (closed) {
+                p.done.completeExceptionally(new IOException("Message writer is closed"));
+                return p.done;
+            }
+            queue.add(p);
+        }
+        return p.done;
+    }
+
+    /** Stops accepting messages, writes everything already queued and waits for the thread. */
+    @Override
+    public void close() {
+        synchronized (this) {
+            if (closed) return;
+            closed = true;
+            queue.add(STOP); // nothing can be queued behind it
+        }
+        try {
+            thread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    public long getMessagesWritten() {
+        return messagesWritten.get();
+    }
+
+    public long getBatchesWritten() {
+        return batchesWritten.get();
+    }
+
+    /** Average number of messages per group commit so far. */
+    public double getAverageBatchSize() {
+        long b = batchesWritten.get();
+        return b == 0 ? 0 : (double) messagesWritten.get() / b;
+    }
+
+    private void run() {
+        List<Pending> batch = new ArrayList<>(maxBatch);
+        boolean stopping = false;
+        while (!stopping) {
+            try {
+                Pending first = queue.take();
+                if (first == STOP) {
+                    stopping = true;
+                } else {
+                    batch.add(first);
+                }
+
+                // gather more until the interval runs out or the batch is full
+                long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(flushIntervalMillis);
+                while (!stopping && batch.size() < maxBatch) {
+                    long wait = deadline - System.nanoTime();
+                    Pending next = wait > 0 ? queue.poll(wait, TimeUnit.NANOSECONDS) : queue.poll();
+                    if (next == null) break;
+                    if (next == STOP) stopping = true; else batch.add(next);
+                }
+            } catch (InterruptedException e) {
+                stopping = true;
+            }
+            if (stopping) {
+                // drain whatever was queued before close()
+                for (Pending p; (p = queue.poll()) != null; ) if (p != STOP) batch.add(p);
+            }
+            if (!batch.isEmpty()) commit(batch);
+            batch.clear();
+        }
+    }
+
+    private void commit(List<Pending> batch) {
+        // drained batches on shutdown may be bigger than maxBatch; write them in chunks
+        for (int from = 0; from < batch.size(); from += maxBatch) {
+            List<Pending> chunk = batch.subList(from, Math.min(batch.size(), from + maxBatch));
+            List<Message> messages = new ArrayList<>(chunk.size());
+            for (Pending p : chunk) messages.add(p.message);
+            try {
+                log.appendAll(messages);
+                if (durability == Durability.FSYNC) log.sync();
+                messagesWritten.addAndGet(chunk.size());
+                batchesWritten.incrementAndGet();
+                for (Pending p : chunk) p.done.complete(null);
+            } catch (IOException | RuntimeException e) {
+                for (Pending p : chunk) p.done.completeExceptionally(e);
+            }
+        }
+    }
+}
@@ -0,0 +1,139 @@
+package com.quinpoint;
+
+import javafx.animation.Animation;
+import javafx.animation.PauseTransition;
+import javafx.application.Platform;
+import javafx.geometry.Insets;
+import javafx.geometry.Pos;
+import javafx.scene.Parent;
+import javafx.scene.control.Label;
+import javafx.scene.layout.StackPane;
+import javafx.util.Duration;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Toast notifications over whatever page is on screen. Toasts are shown one at a time,
+ * top centre, for {@link #DISPLAY} each; the rest wait in a queue of at most
+ * {@link #MAX_QUEUED}, which drops its oldest when full. A message that's already showing
+ * or queued isn't queued again, its toast counts the repeats instead, and one that
+ * finished showing less than {@link #REPEAT_INTERVAL_MILLIS} ago is dropped.
+ *
+ * Timing is done with one FX {@link PauseTransition}, so no thread is started per toast.
+ * Messages can be posted from any thread.
+ */
+final class Notifier {
+
+    enum Level { INFO, ERROR }
+
+    static final Duration DISPLAY = Duration.seconds(2);
+    static final Duration GAP = Duration.millis(250);
+    static final int MAX_QUEUED = 5;
+    static final long REPEAT_INTERVAL_MILLIS = 5_000;
+
+    private static final String INFO_STYLE =
+            "-fx-background-color: #333; -fx-text-fill: white; -fx-padding: 10px; -fx-background-radius: 5;";
+    private static final String ERROR_STYLE =
+            "-fx-background-color: #b00020; -fx-text-fill: white; -fx-padding: 10px; -fx-background-radius: 5;";
+
+    private static final class Toast {
+        final String text;
+        final Level level;
+        int repeats = 1;
+
+        Toast(String text, Level level) {
+            this.text = text;
+            this.level = level;
+        }
+    }
+
+    // FX thread only from here on
+    private final StackPane layer = new StackPane();
+    private final Label label = new Label();
+    private final Deque<Toast> queue = new ArrayDeque<>();
+    private final Map<String, Long> recentlyShown = new HashMap<>(); // text -> when it went away
+    private final PauseTransition timer = new PauseTransition();
+    private Toast showing;
+
+    Notifier() {
+        layer.setMouseTransparent(true);
+        layer.setPickOnBounds(false);
+        label.setVisible(false);
+        StackPane.setAlignment(label, Pos.TOP_CENTER);
+        StackPane.setMargin(label, new Insets(10));
+        layer.getChildren().add(label);
+        timer.setOnFinished(e -> next());
+    }
+
+    /**
+     * A scene root with content under the toast layer. The layer moves to the newest
+     * root, so wrap each scene's content as the stage switches scenes.
+     */
+    StackPane wrap(Parent content) {
+        return new StackPane(content, layer);
+    }
+
+    void info(String message) {
+        post(message, Level.INFO);
+    }
+
+    /** Shows the message as an error; the cause, if any, goes to the log. */
+    void error(String message, Throwable cause) {
+        if (cause != null) cause.printStackTrace();
+        post(message, Level.ERROR);
+    }
+
+    void post(String message, Level level) {
+        if (Platform.isFxApplicationThread()) enqueue(message, level);
+        else Platform.runLater(() -> enqueue(message, level));
+    }
+
+    private void enqueue(String text, Level level) {
+        if (showing != null && showing.text.equals(text)) {
+            showing.repeats++;
+            render(showing);
+            return;
+        }
+        for (Toast t : queue) {
+            if (t.text.equals(text)) {
+                t.repeats++;
+                return;
+            }
+        }
+        long now = System.currentTimeMillis();
+        recentlyShown.values().removeIf(at -> now - at >= REPEAT_INTERVAL_MILLIS);
+        if (recentlyShown.containsKey(text)) return;
+
+        if (queue.size() == MAX_QUEUED) queue.pollFirst();
+        queue.addLast(new Toast(text, level));
+        if (timer.getStatus() != Animation.Status.RUNNING) next();
+    }
+
+    // hides the toast on screen, then after a short gap shows the next one
+    private void next() {
+        if (showing != null) {
+            recentlyShown.put(showing.text, System.currentTimeMillis());
+            showing = null;
+            label.setVisible(false);
+            if (!queue.isEmpty()) {
+                timer.setDuration(GAP);
+                timer.playFromStart();
+            }
+            return;
+        }
+        showing = queue.pollFirst();
+        if (showing == null) return;
+        render(showing);
+        label.setVisible(true);
+        timer.setDuration(DISPLAY);
+        timer.playFromStart();
+    }
+
+    private void render(Toast t) {
+        label.setText(t.repeats > 1 ? t.text + " (x" + t.repeats + ")" : t.text);
+        label.setStyle(t.level == Level.ERROR ? ERROR_STYLE : INFO_STYLE);
+    }
+}
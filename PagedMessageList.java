@@ -0,0 +1,183 @@
+package com.quinpoint;
+
+import com.quinpoint.model.Message;
+import com.quinpoint.service.BackgroundExecutor;
+import com.quinpoint.service.CsvLoaderService;
+import com.quinpoint.service.MessagePage;
+
+import javafx.application.Platform;
+import javafx.collections.ObservableList;
+import javafx.scene.control.IndexedCell;
+import javafx.scene.control.Label;
+import javafx.scene.control.ListCell;
+import javafx.scene.control.ListView;
+import javafx.scene.control.ProgressIndicator;
+import javafx.scene.control.skin.VirtualFlow;
+
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
+
+/**
+ * The Messaging page's conversation, held as a window of it rather than all of it. The
+ * latest {@link #PAGE} messages are read first; when a row within {@link #PREFETCH} of the
+ * top is drawn the page before the window is read in the background, and likewise at the
+ * bottom after paging back. The window keeps at most {@link #MAX_WINDOW} messages and
+ * drops pages from the far end. Rows are only formatted when a cell draws them.
+ * Used from the FX thread only.
+ */
+final class PagedMessageList {
+
+    static final int PAGE = 50;
+    static final int PREFETCH = 10;
+    static final int MAX_WINDOW = 4 * PAGE;
+    private static final double ROW_HEIGHT = 24;
+
+    private final CsvLoaderService loader;
+    private final BackgroundExecutor background;
+    private final String userId;
+    private final Consumer<Throwable> onError;
+    private final ListView<Message> view = new ListView<>();
+    // sent from this page, shown with their time like before
+    private final Set<Message> sentHere = Collections.newSetFromMap(new IdentityHashMap<>());
+
+    // the window is messages from..to (exclusive) of total, numbered from the oldest
+    private int from;
+    private int to;
+    private int total;
+    private boolean loaded;
+    private boolean loading;
+    private long generation; // bumped by loadLatest so replies to older requests are dropped
+
+    PagedMessageList(CsvLoaderService loader, BackgroundExecutor background, String userId,
+                     Consumer<Throwable> onError) {
+        this.loader = loader;
+        this.background = background;
+        this.userId = userId;
+        this.onError = onError;
+        view.setFixedCellSize(ROW_HEIGHT);
+        view.setPlaceholder(new ProgressIndicator());
+        view.setCellFactory(lv -> new ListCell<>() {
+            @Override
+            protected void updateItem(Message m, boolean empty) {
+                super.updateItem(m, empty);
+                if (empty || m == null) {
+                    setText(null);
+                    return;
+                }
+                setText(describe(m));
+                nearEdge(getIndex());
+            }
+        });
+    }
+
+    ListView<Message> getView() {
+        return view;
+    }
+
+    /** Replaces the window with the latest page. */
+    void loadLatest() {
+        generation++;
+        fetch(() -> loader.loadMessagesBefore(userId, -1, PAGE), page -> {
+            view.getItems().setAll(page.getMessages());
+            from = page.getFrom();
+            to = page.getTo();
+            total = page.getTotal();
+            loaded = true;
+            view.setPlaceholder(new Label("No messages yet"));
+            if (!view.getItems().isEmpty()) view.scrollTo(view.getItems().size() - 1);
+        });
+    }
+
+    /**
+     * Shows a message just sent. If the window isn't at the end of the conversation it
+     * moves there once the message is saved.
+     */
+    void addSent(Message m, CompletableFuture<Void> saved) {
+        if (!loaded || to != total) {
+            saved.whenComplete((v, error) -> Platform.runLater(this::loadLatest));
+            return;
+        }
+        sentHere.add(m);
+        ObservableList<Message> items = view.getItems();
+        items.add(m);
+        to++;
+        total++;
+        int excess = items.size() - MAX_WINDOW;
+        if (excess > 0) {
+            items.remove(0, excess);
+            from += excess;
+        }
+        view.scrollTo(items.size() - 1);
+    }
+
+    private String describe(Message m) {
+        if (sentHere.contains(m)) return m.getSenderLabel() + " (" + m.getTimestamp() + "): " + m.getText();
+        return m.getSenderLabel() + ": " + m.getText();
+    }
+
+    // called as rows are drawn; a row near either end of the window reads the next page that way
+    private void nearEdge(int index) {
+        if (loading || !loaded) return;
+        if (index < PREFETCH && from > 0) {
+            loading = true;
+            Platform.runLater(this::loadOlder); // not while the cells are being laid out
+        } else if (index >= view.getItems().size() - PREFETCH && to < total) {
+            loading = true;
+            Platform.runLater(this::loadNewer);
+        }
+    }
+
+    private void loadOlder() {
+        int before = from;
+        fetch(() -> loader.loadMessagesBefore(userId, before, PAGE), page -> {
+            ObservableList<Message> items = view.getItems();
+            int top = firstVisibleIndex();
+            items.addAll(0, page.getMessages());
+            from = page.getFrom();
+            total = Math.max(total, page.getTotal());
+            int excess = items.size() - MAX_WINDOW;
+            if (excess > 0) {
+                items.remove(items.size() - excess, items.size());
+                to -= excess;
+            }
+            view.scrollTo(top + page.size()); // the same rows stay on screen
+        });
+    }
+
+    private void loadNewer() {
+        int after = to;
+        fetch(() -> loader.loadMessagesFrom(userId, after, PAGE), page -> {
+            ObservableList<Message> items = view.getItems();
+            int top = firstVisibleIndex();
+            items.addAll(page.getMessages());
+            to = page.getTo();
+            total = Math.max(total, page.getTotal());
+            int excess = items.size() - MAX_WINDOW;
+            if (excess > 0) {
+                items.remove(0, excess);
+                from += excess;
+                view.scrollTo(Math.max(0, top - excess));
+            }
+        });
+    }
+
+    private void fetch(BackgroundExecutor.Task<MessagePage> read, Consumer<MessagePage> apply) {
+        loading = true;
+        long requested = generation;
+        background.submit(read).whenComplete((page, error) -> Platform.runLater(() -> {
+            if (requested != generation) return;
+            loading = false;
+            if (error != null) onError.accept(error);
+            else apply.accept(page);
+        }));
+    }
+
+    private int firstVisibleIndex() {
+        VirtualFlow<?> flow = (VirtualFlow<?>) view.lookup(".virtual-flow");
+        IndexedCell<?> cell = flow == null ? null : flow.getFirstVisibleCell();
+        return cell == null ? 0 : cell.getIndex();
+    }
+}
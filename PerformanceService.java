@@ -0,0 +1,251 @@
+package com.quinpoint.service;
+
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Return and risk figures per client, worked out from the portfolio value history.
+ * Each client has a tracker that keeps its history in primitive arrays and folds in
+ * one day at a time: Welford's running mean/variance of daily excess returns, the
+ * downside sum of squares, the running peak for drawdown and a rolling window of daily
+ * P&amp;L. When a reload only adds new days to a client's history, just those days are
+ * folded in.
+ */
+public class PerformanceService {
+
+    public static final int TRADING_DAYS_PER_YEAR = 252;
+    /** Days kept in each client's daily P&amp;L window. */
+    public static final int PNL_WINDOW_DAYS = TRADING_DAYS_PER_YEAR;
+
+    /** Figures for one client as of the last day in its history. NaN where there isn't enough data. */
+    public static final class Stats {
+        private final LocalDate asOf;
+        private final int observations;
+        private final double oneWeek;
+        private final double oneMonth;
+        private final double oneYear;
+        private final double volatility;
+        private final double maxDrawdown;
+        private final double sharpe;
+        private final double sortino;
+
+        Stats(LocalDate asOf, int observations, double oneWeek, double oneMonth, double oneYear,
+              double volatility, double maxDrawdown, double sharpe, double sortino) {
+            this.asOf = asOf;
+            this.observations = observations;
+            this.oneWeek = oneWeek;
+            this.oneMonth = oneMonth;
+            this.oneYear = oneYear;
+            this.volatility = volatility;
+            this.maxDrawdown = maxDrawdown;
+            this.sharpe = sharpe;
+            this.sortino = sortino;
+        }
+
+        /** Last day of the history, null if the client has none. */
+        public LocalDate getAsOf() { return asOf; }
+        /** Number of daily returns the risk figures are based on. */
+        public int getObservations() { return observations; }
+        /** Simple returns over the last week, month and year, e.g. 0.018 for +1.8%. */
+        public double getOneWeekReturn() { return oneWeek; }
+        public double getOneMonthReturn() { return oneMonth; }
+        public double getOneYearReturn() { return oneYear; }
+        /** Annualised standard deviation of daily returns. */
+        public double getVolatility() { return volatility; }
+        /** Largest peak-to-trough fall, as a positive fraction of the peak. */
+        public double getMaxDrawdown() { return maxDrawdown; }
+        public double getSharpe() { return sharpe; }
+        public double getSortino() { return sortino; }
+
+        /** Low / Medium / High by annualised volatility (under 10%, under 20%, above). */
+        public String getRiskLevel() {
+            if (Double.isNaN(volatility)) return "Unknown";
+            if (volatility < 0.10) return "Low";
+            if (volatility < 0.20) return "Medium";
+            return "High";
+        }
+
+        @Override
+        public String toString() {
+            return "Stats[asOf=" + asOf + ", n=" + observations + ", 1W=" + oneWeek + ", 1M=" + oneMonth
+                    + ", 1Y=" + oneYear + ", vol=" + volatility + ", maxDD=" + maxDrawdown
+                    + ", sharpe=" + sharpe + ", sortino=" + sortino + "]";
+        }
+    }
+
+    /** Running statistics over one client's value history. */
+    static final class Tracker {
+        private final double dailyRiskFree;
+        private final PnlWindow window = new PnlWindow(PNL_WINDOW_DAYS);
+
+        private int[] days = new int[64];
+        private long[] cents = new long[64];
+        private int size;
+
+        // Welford over daily excess returns
+        private long n;
+        private double mean;
+        private double m2;
+        private double downsideSquares; // sum of min(0, excess)^2
+        private long peak;
+        private double maxDrawdown;
+
+        ClientInputs inputs;
+        TradingCalendar calendar;
+        long version;
+
+        Tracker(double dailyRiskFree) {
+            this.dailyRiskFree = dailyRiskFree;
+        }
+
+        void add(int day, long value) {
+            if (size == days.length) {
+                days = Arrays.copyOf(days, size * 2);
+                cents = Arrays.copyOf(cents, size * 2);
+            }
+            if (size > 0 && cents[size - 1] > 0) {
+                double r = (double) value / cents[size - 1] - 1;
+                double x = r - dailyRiskFree;
+                n++;
+                double delta = x - mean;
+                mean += delta / n;
+                m2 += delta * (x - mean);
+                if (x < 0) downsideSquares += x * x;
+            }
+            if (value > peak) {
+                peak = value;
+            } else if (peak > 0) {
+                maxDrawdown = Math.max(maxDrawdown, (double) (peak - value) / peak);
+            }
+            days[size] = day;
+            cents[size++] = value;
+            window.add(day, value);
+        }
+
+        /** True if the tracked history is the start of s (same days, same values). */
+        boolean isPrefixOf(ValueSeries s) {
+            if (s.size() < size) return false;
+            for (int i = 0; i < size; i++) {
+                if (days[i] != s.getEpochDay(i) || cents[i] != s.getCents(i)) return false;
+            }
+            return true;
+        }
+
+        void addFrom(ValueSeries s) {
+            for (int i = size; i < s.size(); i++) add(s.getEpochDay(i), s.getCents(i));
+        }
+
+        void addAll(ValueSeries s) {
+            for (int i = 0; i < s.size(); i++) add(s.getEpochDay(i), s.getCents(i));
+        }
+
+        int size() {
+            return size;
+        }
+
+        Stats stats() {
+            if (size == 0) {
+                return new Stats(null, 0, Double.NaN, Double.NaN, Double.NaN, Double.NaN, Double.NaN, Double.NaN, Double.NaN);
+            }
+            LocalDate asOf = LocalDate.ofEpochDay(days[size - 1]);
+            double annualise = Math.sqrt(TRADING_DAYS_PER_YEAR);
+            double sd = n > 1 ? Math.sqrt(m2 / (n - 1)) : Double.NaN;
+            double downside = n > 0 ? Math.sqrt(downsideSquares / n) : Double.NaN;
+            return new Stats(asOf, (int) n,
+                    returnSince(asOf.minusWeeks(1)),
+                    returnSince(asOf.minusMonths(1)),
+                    returnSince(asOf.minusYears(1)),
+                    sd * annualise,
+                    maxDrawdown,
+                    sd > 0 ? mean / sd * annualise : Double.NaN,
+                    downside > 0 ? mean / downside * annualise : Double.NaN);
+        }
+
+        /** Return from the last value on or before date to the latest value. */
+        private double returnSince(LocalDate date) {
+            long day = date.toEpochDay();
+            int lo = 0, hi = size - 1, found = -1;
+            while (lo <= hi) {
+                int mid = (lo + hi) >>> 1;
+                if (days[mid] <= day) { found = mid; lo = mid + 1; } else hi = mid - 1;
+            }
+            if (found < 0 || cents[found] <= 0) return Double.NaN;
+            return (double) cents[size - 1] / cents[found] - 1;
+        }
+    }
+
+    private final PortfolioService portfolioService;
+    private final double dailyRiskFree;
+    private final int maxClients;
+    private final Map<String, Tracker> trackers;
+
+    public PerformanceService(PortfolioService portfolioService) {
+        this(portfolioService, 0.0, 1024);
+    }
+
+    /**
+     * @param annualRiskFreeRate used for Sharpe and Sortino, e.g. 0.04 for 4%
+     * @param maxClients         number of clients whose trackers are kept
+     */
+    public PerformanceService(PortfolioService portfolioService, double annualRiskFreeRate, int maxClients) {
+        if (maxClients < 1) throw new IllegalArgumentException("maxClients must be at least 1");
+        this.portfolioService = portfolioService;
+        this.dailyRiskFree = annualRiskFreeRate / TRADING_DAYS_PER_YEAR;
+        this.maxClients = maxClients;
+        this.trackers = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Tracker> eldest) {
+                return size() > PerformanceService.this.maxClients;
+            }
+        };
+    }
+
+    public synchronized Stats getStats(String clientId) {
+        return tracker(clientId).stats();
+    }
+
+    /**
+     * The latest days of daily P&amp;L (newest first, at most {@link #PNL_WINDOW_DAYS}),
+     * with best/worst day over the window and the return over those days.
+     */
+    public synchronized DailyReturns getDailyReturns(String clientId, int days) {
+        return tracker(clientId).window.snapshot(days);
+    }
+
+    // up to date tracker for the current dataset; callers hold the lock
+    private Tracker tracker(String clientId) {
+        Dataset data = portfolioService.dataset(); // one consistent snapshot for the whole call
+        Tracker t = trackers.get(clientId);
+        if (t != null && t.version == data.getVersion()) return t;
+        TradingCalendar calendar = data.getCalendar();
+        if (t != null && t.inputs.isCurrentIn(data)) {
+            // same holdings and prices; the history still grows when trading days are added,
+            // even by other instruments, and when they're only added at the end that's all
+            if (!t.calendar.hasSameDays(calendar) && calendar.extendsDaysOf(t.calendar)) {
+                LocalDate after = t.calendar.size() == 0 ? null
+                        : t.calendar.getDate(t.calendar.size() - 1).plusDays(1);
+                t.addAll(portfolioService.getPortfolioHistorySeries(t.inputs, data, after));
+                t.calendar = calendar;
+            }
+            if (t.calendar.hasSameDays(calendar)) {
+                t.version = data.getVersion();
+                return t;
+            }
+        }
+
+        ClientInputs inputs = ClientInputs.capture(clientId, data);
+        ValueSeries history = portfolioService.getPortfolioHistorySeries(inputs, data);
+        // new days appended to an unchanged past: fold in only the new days
+        if (t == null || !t.isPrefixOf(history)) {
+            t = new Tracker(dailyRiskFree);
+            trackers.put(clientId, t);
+        }
+        t.addFrom(history);
+        t.inputs = inputs;
+        t.calendar = data.getCalendar();
+        t.version = data.getVersion();
+        return t;
+    }
+}
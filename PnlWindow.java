@@ -0,0 +1,102 @@
+package com.quinpoint.service;
+
+import java.time.LocalDate;
+
+/**
+ * Rolling window over the last {@code capacity} days of a value history: each day's
+ * value and its P&amp;L against the day before, kept in ring buffers. Best and worst day
+ * come from monotonic queues (also rings), so adding a day is amortised O(1) and reading
+ * the latest N days is O(N).
+ */
+final class PnlWindow {
+
+    private final int capacity;
+    private final int[] days;
+    private final long[] values; // pence
+    private final long[] pnl;    // pence, change against the previous day
+    private long appended;       // days added to the window so far; day s sits at s % capacity
+    private long previousValue;
+    private boolean hasPrevious;
+
+    // sequence numbers of candidate best / worst days, oldest first
+    private final long[] bestQueue;
+    private final long[] worstQueue;
+    private long bestHead, bestTail, worstHead, worstTail;
+
+    PnlWindow(int capacity) {
+        if (capacity < 1) throw new IllegalArgumentException("capacity must be at least 1");
+        this.capacity = capacity;
+        this.days = new int[capacity];
+        this.values = new long[capacity];
+        this.pnl = new long[capacity];
+        this.bestQueue = new long[capacity];
+        this.worstQueue = new long[capacity];
+    }
+
+    /** Adds the next day's value. The first value only sets the baseline for the next P&amp;L. */
+    void add(int epochDay, long valueCents) {
+        if (!hasPrevious) {
+            previousValue = valueCents;
+            hasPrevious = true;
+            return;
+        }
+        long change = valueCents - previousValue;
+        previousValue = valueCents;
+
+        long seq = appended++;
+        int slot = (int) (seq % capacity);
+        days[slot] = epochDay;
+        values[slot] = valueCents;
+        pnl[slot] = change;
+
+        long oldest = appended - Math.min(appended, capacity);
+        if (bestHead < bestTail && bestQueue[(int) (bestHead % capacity)] < oldest) bestHead++;
+        if (worstHead < worstTail && worstQueue[(int) (worstHead % capacity)] < oldest) worstHead++;
+        while (bestHead < bestTail && pnlAt(bestQueue[(int) ((bestTail - 1) % capacity)]) <= change) bestTail--;
+        bestQueue[(int) (bestTail++ % capacity)] = seq;
+        while (worstHead < worstTail && pnlAt(worstQueue[(int) ((worstTail - 1) % capacity)]) >= change) worstTail--;
+        worstQueue[(int) (worstTail++ % capacity)] = seq;
+    }
+
+    int size() {
+        return (int) Math.min(appended, capacity);
+    }
+
+    int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * Latest n days (newest first), the window's best and worst day and the return over
+     * those n days.
+     */
+    DailyReturns snapshot(int n) {
+        int count = Math.min(Math.max(n, 0), size());
+        LocalDate[] d = new LocalDate[count];
+        long[] p = new long[count];
+        for (int i = 0; i < count; i++) {
+            int slot = (int) ((appended - 1 - i) % capacity);
+            d[i] = LocalDate.ofEpochDay(days[slot]);
+            p[i] = pnl[slot];
+        }
+        if (size() == 0) return new DailyReturns(d, p, null, 0, null, 0, Double.NaN, 0);
+
+        long best = bestQueue[(int) (bestHead % capacity)];
+        long worst = worstQueue[(int) (worstHead % capacity)];
+        double periodReturn = Double.NaN;
+        if (count > 0) {
+            int newest = (int) ((appended - 1) % capacity);
+            int first = (int) ((appended - count) % capacity);
+            long start = values[first] - pnl[first]; // value the day before the period
+            if (start > 0) periodReturn = (double) values[newest] / start - 1;
+        }
+        return new DailyReturns(d, p,
+                LocalDate.ofEpochDay(days[(int) (best % capacity)]), pnlAt(best),
+                LocalDate.ofEpochDay(days[(int) (worst % capacity)]), pnlAt(worst),
+                periodReturn, size());
+    }
+
+    private long pnlAt(long seq) {
+        return pnl[(int) (seq % capacity)];
+    }
+}
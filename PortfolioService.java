@@ -1,7 +1,6 @@
 package com.quinpoint.service;
 
 import com.quinpoint.model.Holding;
-import com.quinpoint.model.PricePoint;
 
 import java.math.BigDecimal;
 import java.math.RoundingMode;
@@ -11,74 +10,268 @@ import java.util.*;
 public class PortfolioService {
 
     private final CsvLoaderService loader;
+    private final ValuationCache valuations;
+    private final boolean fixedPoint;
+    private volatile HoldingsIndex holdingsIndex;
 
     public PortfolioService(CsvLoaderService loader) {
+        this(loader, 1024);
+    }
+
+    /**
+     * @param valuationCacheSize number of clients whose valuations are kept
+     */
+    public PortfolioService(CsvLoaderService loader, int valuationCacheSize) {
+        this(loader, valuationCacheSize, true);
+    }
+
+    /**
+     * @param valuationCacheSize number of clients whose valuations are kept
+     * @param fixedPoint         value holdings with scaled longs, redoing a client in BigDecimal
+     *                           only if a long would overflow; false uses BigDecimal throughout.
+     *                           Both give the same amounts.
+     */
+    public PortfolioService(CsvLoaderService loader, int valuationCacheSize, boolean fixedPoint) {
         this.loader = loader;
+        this.fixedPoint = fixedPoint;
+        this.valuations = new ValuationCache(valuationCacheSize);
+        loader.addReloadListener(valuations::onReload);
+    }
+
+    public ValuationCache getValuationCache() {
+        return valuations;
     }
 
     /**
      * Get total portfolio value for a client (latest prices).
      */
     public BigDecimal getPortfolioValue(String clientId) {
-        List<Holding> clientHoldings = loader.getHoldings().getOrDefault(clientId, List.of());
-        Map<String, List<PricePoint>> allPrices = loader.getPrices();
+        return valuation(clientId, loader.getDataset()).total;
+    }
 
-        BigDecimal total = BigDecimal.ZERO;
+    /**
+     * Get time series of portfolio value (aggregated across holdings), one point per
+     * trading day. A holding whose instrument has no close on a day counts at its last close.
+     */
+    public Map<LocalDate, BigDecimal> getPortfolioHistory(String clientId) {
+        return getPortfolioHistorySeries(clientId).toMap();
+    }
+
+    /**
+     * Same history as getPortfolioHistory, as a compact series (values in pence).
+     */
+    public ValueSeries getPortfolioHistorySeries(String clientId) {
+        Dataset data = loader.getDataset(); // one consistent snapshot for the whole call
+        List<Holding> clientHoldings = data.getHoldings().getOrDefault(clientId, List.of());
+        return HistoryEngine.compute(clientHoldings, data.getCalendar());
+    }
 
-        for (Holding h : clientHoldings) {
-            List<PricePoint> priceHistory = allPrices.get(h.getInstrumentId());
-            if (priceHistory == null || priceHistory.isEmpty()) continue;
+    /**
+     * History between from and to (both inclusive, null for open ends), reduced to at most
+     * maxPoints points for charting. See {@link ValueSeries#downsample(int)}.
+     */
+    public Map<LocalDate, BigDecimal> getPortfolioHistory(String clientId, LocalDate from, LocalDate to, int maxPoints) {
+        return getPortfolioHistorySeries(clientId, from, to, maxPoints).toMap();
+    }
 
-            BigDecimal latestPrice = priceHistory.get(priceHistory.size() - 1).getClose();
-            BigDecimal value = latestPrice.multiply(h.getQuantity());
-            total = total.add(value);
-        }
+    public ValueSeries getPortfolioHistorySeries(String clientId, LocalDate from, LocalDate to, int maxPoints) {
+        Dataset data = loader.getDataset(); // one consistent snapshot for the whole call
+        List<Holding> clientHoldings = data.getHoldings().getOrDefault(clientId, List.of());
+        return HistoryEngine.compute(clientHoldings, data.getCalendar(), from, to).downsample(maxPoints);
+    }
 
-        return total.setScale(2, RoundingMode.HALF_UP);
+    ValueSeries getPortfolioHistorySeries(ClientInputs inputs, Dataset data) {
+        return getPortfolioHistorySeries(inputs, data, null);
+    }
+
+    ValueSeries getPortfolioHistorySeries(ClientInputs inputs, Dataset data, LocalDate from) {
+        return HistoryEngine.compute(inputs.holdingsOrEmpty(), data.getCalendar(), from, null);
+    }
+
+    Dataset dataset() {
+        return loader.getDataset();
     }
 
     /**
-     * Get time series of portfolio value (aggregated across holdings).
+     * Get individual holding values (current snapshot). The map is read-only.
      */
-    public Map<LocalDate, BigDecimal> getPortfolioHistory(String clientId) {
-        List<Holding> clientHoldings = loader.getHoldings().getOrDefault(clientId, List.of());
-        Map<String, List<PricePoint>> allPrices = loader.getPrices();
+    public Map<String, BigDecimal> getHoldingsBreakdown(String clientId) {
+        return valuation(clientId, loader.getDataset()).breakdown();
+    }
 
-        Map<LocalDate, BigDecimal> history = new TreeMap<>();
+    /**
+     * Value of every client's holdings at the last close on or before date, or at the
+     * latest close for a null date (then the same amounts as {@link #getPortfolioValue}).
+     * Each instrument's close is found once by binary search and applied to all of its
+     * holdings at once, through an instrument-major index kept per dataset version.
+     */
+    public ClientValuations getPortfolioValuesAsOf(LocalDate date) {
+        long started = System.nanoTime();
+        Dataset data = loader.getDataset(); // one consistent snapshot for the whole call
+        HoldingsIndex index = holdingsIndex(data);
+        long day = date == null ? Long.MAX_VALUE : date.toEpochDay();
 
-        for (Holding h : clientHoldings) {
-            List<PricePoint> priceHistory = allPrices.get(h.getInstrumentId());
-            if (priceHistory == null) continue;
+        // exact sum per client at its largest scale so far; a client that overflows is redone below
+        int clients = index.clientIds.length;
+        long[] sum = new long[clients];
+        int[] scale = new int[clients];
+        boolean[] overflow = index.bigQuantity.clone();
+        int unpriced = 0;
+        for (int g = 0; g < index.series.length; g++) {
+            int from = index.start[g], to = index.start[g + 1];
+            if (from == to) continue;
+            PriceStore.Series s = index.series[g];
+            int at = s == null ? -1 : s.indexAtOrBefore(day);
+            if (at < 0) {
+                unpriced += to - from;
+                continue;
+            }
+            long close = s.getUnscaledClose(at);
+            int closeScale = s.getScale();
+            for (int r = from; r < to; r++) {
+                int c = index.rowClient[r];
+                if (overflow[c]) continue;
+                try {
+                    long value = Math.multiplyExact(close, index.rowQuantity[r]);
+                    int valueScale = closeScale + index.rowScale[r];
+                    if (valueScale > scale[c]) {
+                        sum[c] = Math.multiplyExact(sum[c], FixedPoint.pow10(valueScale - scale[c]));
+                        scale[c] = valueScale;
+                    } else if (valueScale < scale[c]) {
+                        value = Math.multiplyExact(value, FixedPoint.pow10(scale[c] - valueScale));
+                    }
+                    sum[c] = Math.addExact(sum[c], value);
+                } catch (ArithmeticException e) {
+                    overflow[c] = true;
+                }
+            }
+        }
 
-            for (PricePoint p : priceHistory) {
-                BigDecimal value = p.getClose().multiply(h.getQuantity());
-                history.merge(p.getDate(), value, BigDecimal::add);
+        long[] cents = new long[clients];
+        Map<Integer, BigDecimal> large = new HashMap<>();
+        for (int c = 0; c < clients; c++) {
+            if (!overflow[c]) {
+                try {
+                    cents[c] = FixedPoint.toCents(sum[c], scale[c]);
+                    continue;
+                } catch (ArithmeticException e) {
+                    // fall through to BigDecimal
+                }
             }
+            BigDecimal value = valueAsOfBigDecimal(data.getHoldings().get(index.clientIds[c]), data.getPrices(), day);
+            if (value.precision() <= 18) cents[c] = value.unscaledValue().longValue();
+            else large.put(c, value);
         }
+        return new ClientValuations(date, data.getVersion(), index.clientIds, index.slotByClient, cents,
+                large, unpriced, System.nanoTime() - started);
+    }
 
-        // normalize precision
-        history.replaceAll((date, val) -> val.setScale(2, RoundingMode.HALF_UP));
-        return history;
+    private static BigDecimal valueAsOfBigDecimal(List<Holding> holdings, PriceStore prices, long day) {
+        BigDecimal total = BigDecimal.ZERO;
+        for (Holding h : holdings) {
+            PriceStore.Series s = prices.seriesFor(h);
+            int at = s == null ? -1 : s.indexAtOrBefore(day);
+            if (at >= 0) total = total.add(s.getClose(at).multiply(h.getQuantity()));
+        }
+        return total.setScale(2, RoundingMode.HALF_UP);
+    }
+
+    private HoldingsIndex holdingsIndex(Dataset data) {
+        HoldingsIndex index = holdingsIndex;
+        if (index != null && index.version == data.getVersion()) return index;
+        synchronized (this) {
+            index = holdingsIndex;
+            if (index == null || index.version != data.getVersion()) {
+                index = HoldingsIndex.build(data, loader.getInstrumentRegistry());
+                holdingsIndex = index;
+            }
+            return index;
+        }
     }
 
     /**
-     * Get individual holding values (current snapshot).
+     * Cost, unrealised P&amp;L and returns since purchase of the client's holdings, from the
+     * initial values and purchase dates in the holdings file.
      */
-    public Map<String, BigDecimal> getHoldingsBreakdown(String clientId) {
-        List<Holding> clientHoldings = loader.getHoldings().getOrDefault(clientId, List.of());
-        Map<String, List<PricePoint>> allPrices = loader.getPrices();
+    public CostBasis getCostBasis(String clientId) {
+        return CostBasis.compute(valuation(clientId, loader.getDataset()).inputs);
+    }
+
+    /**
+     * Value of each asset class in the client's holdings (from instruments.csv), largest
+     * first. Instruments without a class are grouped under {@link Dataset#UNCLASSIFIED}.
+     */
+    public Map<String, BigDecimal> getAssetClassBreakdown(String clientId) {
+        Dataset data = loader.getDataset(); // one consistent snapshot for the whole call
+        Map<String, BigDecimal> byClass = new HashMap<>();
+        for (Map.Entry<String, BigDecimal> e : valuation(clientId, data).breakdown().entrySet()) {
+            byClass.merge(data.getAssetClass(e.getKey()), e.getValue(), BigDecimal::add);
+        }
+        List<Map.Entry<String, BigDecimal>> sorted = new ArrayList<>(byClass.entrySet());
+        sorted.sort(Map.Entry.<String, BigDecimal>comparingByValue().reversed());
+        Map<String, BigDecimal> out = new LinkedHashMap<>();
+        for (Map.Entry<String, BigDecimal> e : sorted) out.put(e.getKey(), e.getValue());
+        return Collections.unmodifiableMap(out);
+    }
+
+    private ValuationCache.Valuation valuation(String clientId, Dataset data) {
+        ValuationCache.Valuation cached = valuations.get(clientId, data);
+        if (cached != null) return cached;
+
+        ClientInputs inputs = ClientInputs.capture(clientId, data);
+        ValuationCache.Valuation v;
+        if (fixedPoint) {
+            try {
+                v = valueFixedPoint(inputs, data.getVersion());
+            } catch (ArithmeticException overflow) {
+                v = valueBigDecimal(inputs, data.getVersion());
+            }
+        } else {
+            v = valueBigDecimal(inputs, data.getVersion());
+        }
+        valuations.put(clientId, v);
+        return v;
+    }
 
+    // latest close * quantity per holding in pence, and the exact total rounded once at the end
+    private static ValuationCache.Valuation valueFixedPoint(ClientInputs inputs, long version) {
+        List<Holding> clientHoldings = inputs.holdingsOrEmpty();
+        long[] cents = new long[clientHoldings.size()];
+        FixedPoint.Sum total = new FixedPoint.Sum();
+        for (int i = 0; i < cents.length; i++) {
+            PriceStore.Series prices = inputs.series[i];
+            if (prices == null || prices.isEmpty()) {
+                cents[i] = ValuationCache.Valuation.UNPRICED;
+                continue;
+            }
+            Holding h = clientHoldings.get(i);
+            long value = Math.multiplyExact(prices.getUnscaledClose(prices.size() - 1), FixedPoint.quantity(h));
+            int scale = prices.getScale() + h.getQuantityScale();
+            cents[i] = FixedPoint.toCents(value, scale);
+            total.add(value, scale);
+        }
+        return new ValuationCache.Valuation(BigDecimal.valueOf(total.cents(), 2), cents, inputs, version);
+    }
+
+    private static ValuationCache.Valuation valueBigDecimal(ClientInputs inputs, long version) {
+        List<Holding> clientHoldings = inputs.holdingsOrEmpty();
+
+        BigDecimal total = BigDecimal.ZERO;
         Map<String, BigDecimal> breakdown = new HashMap<>();
 
-        for (Holding h : clientHoldings) {
-            List<PricePoint> priceHistory = allPrices.get(h.getInstrumentId());
-            if (priceHistory == null || priceHistory.isEmpty()) continue;
+        for (int i = 0; i < clientHoldings.size(); i++) {
+            Holding h = clientHoldings.get(i);
+            PriceStore.Series prices = inputs.series[i];
+
+            BigDecimal latestPrice = prices == null ? null : prices.latestClose();
+            if (latestPrice == null) continue;
 
-            BigDecimal latestPrice = priceHistory.get(priceHistory.size() - 1).getClose();
             BigDecimal value = latestPrice.multiply(h.getQuantity());
+            total = total.add(value);
             breakdown.put(h.getInstrumentId(), value.setScale(2, RoundingMode.HALF_UP));
         }
 
-        return breakdown;
+        return new ValuationCache.Valuation(total.setScale(2, RoundingMode.HALF_UP),
+                Collections.unmodifiableMap(breakdown), inputs, version);
     }
 }
@@ -0,0 +1,435 @@
+package com.quinpoint.service;
+
+import com.quinpoint.model.Holding;
+import com.quinpoint.model.PricePoint;
+
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.time.LocalDate;
+import java.util.*;
+
+/**
+ * Columnar store of daily closes.
+ * Every instrument gets one {@link Series}: an epoch-day int column and a close column
+ * held as longs at a fixed per-instrument scale, sorted by date. Columns live in plain
+ * arrays, or in direct buffers outside the Java heap when created with offHeap = true.
+ *
+ * PricePoint objects are only created on demand by {@link #asPricePointMap()}.
+ *
+ * A store created with an {@link InstrumentRegistry} also keeps its series in an array
+ * by instrument index, so {@link #seriesFor(Holding)} needs no hashing.
+ *
+ * Only the loader fills a store in, before it's published; the methods that change it
+ * are package-private so a published store stays as it is.
+ */
+public class PriceStore {
+
+    private final boolean offHeap;
+    private final Map<String, Series> series = new HashMap<>();
+    private final InstrumentRegistry registry; // may be null
+    private Series[] byIndex = new Series[0];
+
+    public PriceStore() {
+        this(false);
+    }
+
+    public PriceStore(boolean offHeap) {
+        this(offHeap, null);
+    }
+
+    public PriceStore(boolean offHeap, InstrumentRegistry registry) {
+        this.offHeap = offHeap;
+        this.registry = registry;
+    }
+
+    public boolean isOffHeap() { return offHeap; }
+
+    /**
+     * Builds and stores the series for an instrument from unsorted rows.
+     * Closes may have different scales; they're all rescaled to the largest one.
+     * Rows with the same date keep their original order.
+     */
+    Series put(String instrumentId, int[] days, long[] unscaled, int[] scales, int rows) {
+        Series s = Series.build(instrumentId, days, unscaled, scales, rows, offHeap);
+        put(s);
+        return s;
+    }
+
+    void put(Series s) {
+        series.put(s.getInstrumentId(), s);
+        if (registry != null) {
+            int i = registry.intern(s.getInstrumentId());
+            if (i >= byIndex.length) byIndex = Arrays.copyOf(byIndex, Math.max(i + 1, byIndex.length * 2));
+            byIndex[i] = s;
+        }
+    }
+
+    void putAll(PriceStore other) {
+        other.series.values().forEach(this::put);
+    }
+
+    Series remove(String instrumentId) {
+        Series s = series.remove(instrumentId);
+        if (registry != null) {
+            int i = registry.indexOf(instrumentId);
+            if (i >= 0 && i < byIndex.length) byIndex[i] = null;
+        }
+        return s;
+    }
+
+    /** Shallow copy: the series themselves are shared, they're never modified. */
+    public PriceStore copy() {
+        PriceStore c = new PriceStore(offHeap, registry);
+        c.series.putAll(series);
+        c.byIndex = byIndex.clone();
+        return c;
+    }
+
+    public Series get(String instrumentId) {
+        return series.get(instrumentId);
+    }
+
+    /** Series by registry index, or null. Only meaningful with this store's registry. */
+    public Series get(int instrumentIndex) {
+        return instrumentIndex >= 0 && instrumentIndex < byIndex.length ? byIndex[instrumentIndex] : null;
+    }
+
+    /** Slots available to {@link #get(int)}; indexes at or above this have no series. */
+    public int indexCapacity() {
+        return byIndex.length;
+    }
+
+    /**
+     * Prices for a holding's instrument, by index when the holding has one from this
+     * store's registry and by id otherwise.
+     */
+    public Series seriesFor(Holding h) {
+        Series s = get(h.getInstrumentIndex());
+        if (s != null && s.getInstrumentId().equals(h.getInstrumentId())) return s;
+        return series.get(h.getInstrumentId());
+    }
+
+    public Set<String> instrumentIds() {
+        return Collections.unmodifiableSet(series.keySet());
+    }
+
+    public int size() {
+        return series.size();
+    }
+
+    /** Latest close, or null if the instrument has no prices. */
+    public BigDecimal latestPrice(String instrumentId) {
+        Series s = series.get(instrumentId);
+        return s == null || s.isEmpty() ? null : s.getClose(s.size() - 1);
+    }
+
+    /** Last close on or before the given date, or null if there is none. */
+    public BigDecimal priceAsOf(String instrumentId, LocalDate date) {
+        Series s = series.get(instrumentId);
+        return s == null ? null : s.closeAsOf(date);
+    }
+
+    /** Closes between from and to (both inclusive), or an empty series. */
+    public Series range(String instrumentId, LocalDate from, LocalDate to) {
+        Series s = series.get(instrumentId);
+        return s == null ? Series.empty(instrumentId) : s.range(from, to);
+    }
+
+    /**
+     * Read-only Map view for older code that expects instrumentId -> List<PricePoint>.
+     * Lists and points are created lazily as they're accessed.
+     */
+    public Map<String, List<PricePoint>> asPricePointMap() {
+        return new AbstractMap<>() {
+            @Override
+            public List<PricePoint> get(Object key) {
+                Series s = series.get(key);
+                return s == null ? null : s.asPricePoints();
+            }
+
+            @Override
+            public boolean containsKey(Object key) {
+                return series.containsKey(key);
+            }
+
+            @Override
+            public int size() {
+                return series.size();
+            }
+
+            @Override
+            public Set<Entry<String, List<PricePoint>>> entrySet() {
+                return new AbstractSet<>() {
+                    @Override
+                    public Iterator<Entry<String, List<PricePoint>>> iterator() {
+                        Iterator<Series> it = series.values().iterator();
+                        return new Iterator<>() {
+                            public boolean hasNext() { return it.hasNext(); }
+                            public Entry<String, List<PricePoint>> next() {
+                                Series s = it.next();
+                                return new AbstractMap.SimpleImmutableEntry<>(s.getInstrumentId(), s.asPricePoints());
+                            }
+                        };
+                    }
+
+                    @Override
+                    public int size() {
+                        return series.size();
+                    }
+                };
+            }
+        };
+    }
+
+    /**
+     * Date-sorted closes of a single instrument. A range view shares the columns of
+     * the series it came from.
+     */
+    public static final class Series {
+        private final String instrumentId;
+        private final int scale;
+        private final int offset;
+        private final int length;
+        // exactly one of the two storage forms is set
+        private final int[] days;
+        private final long[] closes;
+        private final IntBuffer dayBuf;
+        private final LongBuffer closeBuf;
+
+        private Series(String instrumentId, int scale, int offset, int length,
+                       int[] days, long[] closes, IntBuffer dayBuf, LongBuffer closeBuf) {
+            this.instrumentId = instrumentId;
+            this.scale = scale;
+            this.offset = offset;
+            this.length = length;
+            this.days = days;
+            this.closes = closes;
+            this.dayBuf = dayBuf;
+            this.closeBuf = closeBuf;
+        }
+
+        static Series empty(String instrumentId) {
+            return new Series(instrumentId, 0, 0, 0, new int[0], new long[0], null, null);
+        }
+
+        /** Wraps already sorted columns; the arrays are used as-is. */
+        public static Series of(String instrumentId, int[] days, long[] closes, int scale, boolean offHeap) {
+            if (days.length != closes.length) throw new IllegalArgumentException("column length mismatch");
+            if (!offHeap) return new Series(instrumentId, scale, 0, days.length, days, closes, null, null);
+            IntBuffer db = ByteBuffer.allocateDirect(days.length * Integer.BYTES).order(ByteOrder.nativeOrder()).asIntBuffer();
+            LongBuffer cb = ByteBuffer.allocateDirect(closes.length * Long.BYTES).order(ByteOrder.nativeOrder()).asLongBuffer();
+            db.put(days).flip();
+            cb.put(closes).flip();
+            return new Series(instrumentId, scale, 0, days.length, null, null, db, cb);
+        }
+
+        /**
+         * Sorted series from unsorted rows, rescaled to the largest scale. If a close
+         * doesn't fit in a long at that scale, trailing zeros are dropped first (e.g.
+         * "150.1000000000") and it's tried again; ArithmeticException if it still doesn't.
+         */
+        static Series build(String instrumentId, int[] days, long[] unscaled, int[] scales, int rows, boolean offHeap) {
+            try {
+                return sortAndRescale(instrumentId, days, unscaled, scales, rows, offHeap);
+            } catch (ArithmeticException overflow) {
+                long[] u = Arrays.copyOf(unscaled, rows);
+                int[] sc = Arrays.copyOf(scales, rows);
+                for (int i = 0; i < rows; i++) {
+                    while (sc[i] > 0 && u[i] % 10 == 0) {
+                        u[i] /= 10;
+                        sc[i]--;
+                    }
+                }
+                try {
+                    return sortAndRescale(instrumentId, days, u, sc, rows, offHeap);
+                } catch (ArithmeticException stillOverflows) {
+                    throw new ArithmeticException("closes of " + instrumentId + " don't fit in a long at one scale");
+                }
+            }
+        }
+
+        private static Series sortAndRescale(String instrumentId, int[] days, long[] unscaled, int[] scales, int rows,
+                                             boolean offHeap) {
+            int maxScale = 0;
+            for (int i = 0; i < rows; i++) maxScale = Math.max(maxScale, scales[i]);
+
+            // stable sort on (day, row) packed into one long, skipped when the file was already in order
+            int[] order = null;
+            for (int i = 1; i < rows; i++) {
+                if (days[i] < days[i - 1]) {
+                    long[] keys = new long[rows];
+                    for (int k = 0; k < rows; k++) keys[k] = ((long) days[k] << 32) | k;
+                    Arrays.sort(keys);
+                    order = new int[rows];
+                    for (int k = 0; k < rows; k++) order[k] = (int) keys[k];
+                    break;
+                }
+            }
+
+            int[] d = new int[rows];
+            long[] c = new long[rows];
+            for (int k = 0; k < rows; k++) {
+                int i = order == null ? k : order[k];
+                d[k] = days[i];
+                c[k] = Math.multiplyExact(unscaled[i], pow10(maxScale - scales[i]));
+            }
+            return of(instrumentId, d, c, maxScale, offHeap);
+        }
+
+        /**
+         * A new series with the given closes set: a day the series already has gets the new
+         * close, other days are added. newDays must be sorted and distinct. Closes are
+         * rescaled to the larger of the series' scale and theirs.
+         */
+        Series withCloses(int[] newDays, long[] unscaled, int[] scales, int n, boolean offHeap) {
+            int maxScale = scale;
+            for (int j = 0; j < n; j++) maxScale = Math.max(maxScale, scales[j]);
+            long up = pow10(maxScale - scale);
+            int[] d = new int[length + n];
+            long[] c = new long[length + n];
+            // ticks are nearly always for the last day or after it; what's before them is copied as is
+            int i = n == 0 ? length : indexAtOrAfter(newDays[0]);
+            if (days != null && up == 1) {
+                System.arraycopy(days, offset, d, 0, i);
+                System.arraycopy(closes, offset, c, 0, i);
+            } else {
+                for (int t = 0; t < i; t++) {
+                    d[t] = rawDay(t);
+                    c[t] = Math.multiplyExact(getUnscaledClose(t), up);
+                }
+            }
+            int j = 0, k = i;
+            while (i < length || j < n) {
+                if (j == n || (i < length && rawDay(i) < newDays[j])) {
+                    d[k] = rawDay(i);
+                    c[k++] = Math.multiplyExact(getUnscaledClose(i++), up);
+                } else {
+                    if (i < length && rawDay(i) == newDays[j]) i++; // replaced
+                    d[k] = newDays[j];
+                    c[k++] = Math.multiplyExact(unscaled[j], pow10(maxScale - scales[j]));
+                    j++;
+                }
+            }
+            return k == d.length ? of(instrumentId, d, c, maxScale, offHeap)
+                    : of(instrumentId, Arrays.copyOf(d, k), Arrays.copyOf(c, k), maxScale, offHeap);
+        }
+
+        /**
+         * Index of the first close whose day or price differs from other's, or the smaller
+         * size if one series is the start of the other. 0 if the scales differ.
+         */
+        int mismatch(Series other) {
+            int n = Math.min(length, other.length);
+            if (scale != other.scale) return 0;
+            if (days != null && other.days != null) {
+                int d = Arrays.mismatch(days, offset, offset + n, other.days, other.offset, other.offset + n);
+                int c = Arrays.mismatch(closes, offset, offset + n, other.closes, other.offset, other.offset + n);
+                return Math.min(d < 0 ? n : d, c < 0 ? n : c);
+            }
+            for (int i = 0; i < n; i++) {
+                if (rawDay(i) != other.rawDay(i) || getUnscaledClose(i) != other.getUnscaledClose(i)) return i;
+            }
+            return n;
+        }
+
+        public String getInstrumentId() { return instrumentId; }
+        public int getScale() { return scale; }
+        public int size() { return length; }
+        public boolean isEmpty() { return length == 0; }
+
+        public int getEpochDay(int i) {
+            checkIndex(i);
+            return days != null ? days[offset + i] : dayBuf.get(offset + i);
+        }
+
+        public LocalDate getDate(int i) {
+            return LocalDate.ofEpochDay(getEpochDay(i));
+        }
+
+        /** Close at index i as an unscaled long, see {@link #getScale()}. */
+        public long getUnscaledClose(int i) {
+            checkIndex(i);
+            return closes != null ? closes[offset + i] : closeBuf.get(offset + i);
+        }
+
+        public BigDecimal getClose(int i) {
+            return BigDecimal.valueOf(getUnscaledClose(i), scale);
+        }
+
+        public BigDecimal latestClose() {
+            return length == 0 ? null : getClose(length - 1);
+        }
+
+        /** Index of the last close on or before epochDay, or -1 if every close is later. */
+        public int indexAtOrBefore(long epochDay) {
+            int lo = 0, hi = length - 1, found = -1;
+            while (lo <= hi) {
+                int mid = (lo + hi) >>> 1;
+                if (rawDay(mid) <= epochDay) { found = mid; lo = mid + 1; } else hi = mid - 1;
+            }
+            return found;
+        }
+
+        /** Index of the first close on or after epochDay, or size() if every close is earlier. */
+        public int indexAtOrAfter(long epochDay) {
+            int lo = 0, hi = length;
+            while (lo < hi) {
+                int mid = (lo + hi) >>> 1;
+                if (rawDay(mid) < epochDay) lo = mid + 1; else hi = mid;
+            }
+            return lo;
+        }
+
+        public BigDecimal closeAsOf(LocalDate date) {
+            int i = indexAtOrBefore(date.toEpochDay());
+            return i < 0 ? null : getClose(i);
+        }
+
+        /** View of the closes between from and to, both inclusive. Null bounds are open. */
+        public Series range(LocalDate from, LocalDate to) {
+            int lo = from == null ? 0 : indexAtOrAfter(from.toEpochDay());
+            int hi = to == null ? length : indexAtOrBefore(to.toEpochDay()) + 1;
+            return slice(lo, Math.max(lo, hi));
+        }
+
+        public Series slice(int fromIndex, int toIndex) {
+            if (fromIndex < 0 || toIndex > length || fromIndex > toIndex) {
+                throw new IndexOutOfBoundsException(fromIndex + ".." + toIndex + " of " + length);
+            }
+            return new Series(instrumentId, scale, offset + fromIndex, toIndex - fromIndex,
+                    days, closes, dayBuf, closeBuf);
+        }
+
+        /** Read-only PricePoint list over this series; points are created on access. */
+        public List<PricePoint> asPricePoints() {
+            return new AbstractList<>() {
+                @Override
+                public PricePoint get(int i) {
+                    return new PricePoint(instrumentId, getDate(i), getClose(i));
+                }
+
+                @Override
+                public int size() {
+                    return length;
+                }
+            };
+        }
+
+        private int rawDay(int i) {
+            return days != null ? days[offset + i] : dayBuf.get(offset + i);
+        }
+
+        private void checkIndex(int i) {
+            if (i < 0 || i >= length) throw new IndexOutOfBoundsException("index " + i + " of " + length);
+        }
+
+        private static long pow10(int n) {
+            long p = 1;
+            for (int i = 0; i < n; i++) p = Math.multiplyExact(p, 10L);
+            return p;
+        }
+    }
+}
@@ -0,0 +1,51 @@
+package com.quinpoint.service;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
+
+/**
+ * One live price update: the close of an instrument for a day, so far. A later tick for
+ * the same instrument and day replaces it. Sources send ticks as text lines of the form
+ * {@code instrumentId,yyyy-MM-dd,close}.
+ */
+public final class PriceTick {
+
+    private final String instrumentId;
+    private final int epochDay;
+    private final long unscaledClose;
+    private final int scale;
+
+    public PriceTick(String instrumentId, LocalDate date, BigDecimal close) {
+        if (close.scale() < 0) close = close.setScale(0);
+        this.instrumentId = instrumentId;
+        this.epochDay = (int) date.toEpochDay();
+        this.unscaledClose = close.unscaledValue().longValueExact();
+        this.scale = close.scale();
+    }
+
+    /** Parses {@code instrumentId,yyyy-MM-dd,close}; IllegalArgumentException if the line isn't one. */
+    public static PriceTick parse(String line) {
+        int a = line.indexOf(',');
+        int b = a < 0 ? -1 : line.indexOf(',', a + 1);
+        if (a <= 0 || b < 0) throw new IllegalArgumentException("Not a price tick: " + line);
+        try {
+            return new PriceTick(line.substring(0, a).trim(), LocalDate.parse(line.substring(a + 1, b).trim()),
+                    new BigDecimal(line.substring(b + 1).trim()));
+        } catch (DateTimeParseException | ArithmeticException e) {
+            throw new IllegalArgumentException("Not a price tick: " + line, e);
+        }
+    }
+
+    public String getInstrumentId() { return instrumentId; }
+    public int getEpochDay() { return epochDay; }
+    public LocalDate getDate() { return LocalDate.ofEpochDay(epochDay); }
+    public long getUnscaledClose() { return unscaledClose; }
+    public int getScale() { return scale; }
+    public BigDecimal getClose() { return BigDecimal.valueOf(unscaledClose, scale); }
+
+    @Override
+    public String toString() {
+        return instrumentId + "," + getDate() + "," + getClose();
+    }
+}
@@ -0,0 +1,88 @@
+package com.quinpoint.service;
+
+import java.util.Collections;
+import java.util.Set;
+
+/**
+ * Describes one published reload of the data directory: which files changed,
+ * how long it took and the datasets before and after. Live price ticks are published
+ * the same way, see {@link #isTickUpdate()}.
+ */
+public final class ReloadEvent {
+
+    private final Dataset previous;
+    private final Dataset current;
+    private final boolean clientsChanged;
+    private final boolean advisorsChanged;
+    private final boolean assignmentsChanged;
+    private final boolean instrumentsChanged; // instruments.csv
+    private final Set<String> changedHoldings;    // client ids whose holdings file changed
+    private final Set<String> changedInstruments; // instrument ids whose price file changed, or that ticked
+    private final boolean fullReload;
+    private final boolean tickUpdate;
+    private final long latencyNanos;
+
+    ReloadEvent(Dataset previous, Dataset current, boolean clientsChanged, boolean advisorsChanged, boolean assignmentsChanged,
+                boolean instrumentsChanged,
+                Set<String> changedHoldings, Set<String> changedInstruments,
+                boolean fullReload, long latencyNanos) {
+        this(previous, current, clientsChanged, advisorsChanged, assignmentsChanged, instrumentsChanged,
+                changedHoldings, changedInstruments, fullReload, false, latencyNanos);
+    }
+
+    ReloadEvent(Dataset previous, Dataset current, boolean clientsChanged, boolean advisorsChanged, boolean assignmentsChanged,
+                boolean instrumentsChanged,
+                Set<String> changedHoldings, Set<String> changedInstruments,
+                boolean fullReload, boolean tickUpdate, long latencyNanos) {
+        this.previous = previous;
+        this.current = current;
+        this.clientsChanged = clientsChanged;
+        this.advisorsChanged = advisorsChanged;
+        this.assignmentsChanged = assignmentsChanged;
+        this.instrumentsChanged = instrumentsChanged;
+        this.changedHoldings = Collections.unmodifiableSet(changedHoldings);
+        this.changedInstruments = Collections.unmodifiableSet(changedInstruments);
+        this.fullReload = fullReload;
+        this.tickUpdate = tickUpdate;
+        this.latencyNanos = latencyNanos;
+    }
+
+    public Dataset getPrevious() { return previous; }
+    public Dataset getCurrent() { return current; }
+    public boolean isClientsChanged() { return clientsChanged; }
+    public boolean isAdvisorsChanged() { return advisorsChanged; }
+    public boolean isAssignmentsChanged() { return assignmentsChanged; }
+    /** True if instruments.csv (metadata, not prices) changed. */
+    public boolean isInstrumentsChanged() { return instrumentsChanged; }
+    public Set<String> getChangedHoldings() { return changedHoldings; }
+    public Set<String> getChangedInstruments() { return changedInstruments; }
+
+    /** True when everything was re-read, e.g. after the watcher lost events. */
+    public boolean isFullReload() { return fullReload; }
+
+    /**
+     * True for a batch of live price ticks rather than changed files; the changed
+     * instruments are the ones that ticked.
+     */
+    public boolean isTickUpdate() { return tickUpdate; }
+
+    /** Number of changed files that were re-parsed; 0 for ticks. */
+    public int getChangedFileCount() {
+        if (tickUpdate) return 0;
+        return (clientsChanged ? 1 : 0) + (advisorsChanged ? 1 : 0) + (assignmentsChanged ? 1 : 0)
+                + (instrumentsChanged ? 1 : 0)
+                + changedHoldings.size() + changedInstruments.size();
+    }
+
+    /** Time from picking up the changes to publishing the new dataset. */
+    public long getLatencyMillis() {
+        return latencyNanos / 1_000_000;
+    }
+
+    @Override
+    public String toString() {
+        return "ReloadEvent[v" + current.getVersion() + ", files=" + getChangedFileCount()
+                + ", full=" + fullReload
+                + (tickUpdate ? ", ticks=" + changedInstruments.size() : "") + ", " + getLatencyMillis() + "ms]";
+    }
+}
@@ -0,0 +1,90 @@
+package com.quinpoint.service;
+
+import com.quinpoint.model.Holding;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Daily log returns of every instrument over the last trading days of the dataset's
+ * {@link TradingCalendar}, built once per dataset for {@link RiskService}. Closes come
+ * from the aligned series, so a day an instrument didn't trade is a 0 return, as are
+ * the days before its first close.
+ *
+ * Rows are kept by registry index like {@link PriceStore}, with a map for the rest.
+ */
+final class ReturnHistory {
+
+    final long version;
+    private final TradingCalendar calendar;
+    private final int firstSlot;           // return t is slot firstSlot + t + 1 against the slot before
+    private final int size;
+    private final double[][] byIndex;
+    private final String[] idByIndex;
+    private final Map<String, double[]> byId;
+
+    private ReturnHistory(long version, TradingCalendar calendar, int firstSlot, int size, double[][] byIndex,
+                          String[] idByIndex, Map<String, double[]> byId) {
+        this.version = version;
+        this.calendar = calendar;
+        this.firstSlot = firstSlot;
+        this.size = size;
+        this.byIndex = byIndex;
+        this.idByIndex = idByIndex;
+        this.byId = byId;
+    }
+
+    static ReturnHistory build(Dataset data, int lookbackDays) {
+        PriceStore prices = data.getPrices();
+        TradingCalendar calendar = data.getCalendar();
+        int firstSlot = Math.max(0, calendar.size() - (lookbackDays + 1));
+        int size = Math.max(0, calendar.size() - firstSlot - 1);
+
+        Map<String, double[]> byId = new HashMap<>(prices.size() * 2);
+        for (String id : prices.instrumentIds()) {
+            byId.put(id, logReturns(calendar.aligned(id), firstSlot, size, calendar.size()));
+        }
+
+        int dense = prices.indexCapacity();
+        double[][] byIndex = new double[dense][];
+        String[] idByIndex = new String[dense];
+        for (int i = 0; i < dense; i++) {
+            PriceStore.Series s = prices.get(i);
+            if (s == null) continue;
+            idByIndex[i] = s.getInstrumentId();
+            byIndex[i] = byId.get(s.getInstrumentId());
+        }
+        return new ReturnHistory(data.getVersion(), calendar, firstSlot, size, byIndex, idByIndex, byId);
+    }
+
+    /** Number of daily returns per instrument. */
+    int size() {
+        return size;
+    }
+
+    /** Epoch day of return t. */
+    int dayOf(int t) {
+        return calendar.getEpochDay(firstSlot + t + 1);
+    }
+
+    /** Returns of the holding's instrument, or null if it has no prices. Rows are shared, don't modify. */
+    double[] returnsFor(Holding h) {
+        int i = h.getInstrumentIndex();
+        if (i >= 0 && i < byIndex.length && byIndex[i] != null && h.getInstrumentId().equals(idByIndex[i])) {
+            return byIndex[i];
+        }
+        return byId.get(h.getInstrumentId());
+    }
+
+    private static double[] logReturns(TradingCalendar.Aligned a, int firstSlot, int size, int end) {
+        double[] r = new double[size];
+        if (a == null) return r;
+        double unit = Math.pow(10, -a.getScale());
+        for (int t = Math.max(firstSlot + 1, a.getFirstSlot() + 1); t < end; t++) {
+            double previous = a.getUnscaledClose(t - 1) * unit;
+            double close = a.getUnscaledClose(t) * unit;
+            r[t - firstSlot - 1] = previous > 0 && close > 0 ? Math.log(close / previous) : 0;
+        }
+        return r;
+    }
+}
@@ -0,0 +1,91 @@
+package com.quinpoint.service;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+
+/**
+ * One-day value at risk of a client's portfolio from {@link RiskService}: historical and
+ * Monte Carlo VaR/CVaR at the engine's confidence level, and how the measured risk level
+ * compares with the band allowed by the client's risk score. Losses are positive amounts
+ * in pounds; NaN / null where there isn't enough data.
+ */
+public final class RiskReport {
+
+    private final String clientId;
+    private final int riskScore;
+    private final double value;
+    private final double confidence;
+    private final int observations;
+    private final int simulations;
+    private final double historicalVar;
+    private final double historicalCvar;
+    private final double monteCarloVar;
+    private final double monteCarloCvar;
+    private final double volatility;
+
+    RiskReport(String clientId, int riskScore, double value, double confidence, int observations, int simulations,
+               double historicalVar, double historicalCvar, double monteCarloVar, double monteCarloCvar,
+               double volatility) {
+        this.clientId = clientId;
+        this.riskScore = riskScore;
+        this.value = value;
+        this.confidence = confidence;
+        this.observations = observations;
+        this.simulations = simulations;
+        this.historicalVar = historicalVar;
+        this.historicalCvar = historicalCvar;
+        this.monteCarloVar = monteCarloVar;
+        this.monteCarloCvar = monteCarloCvar;
+        this.volatility = volatility;
+    }
+
+    public String getClientId() { return clientId; }
+    public int getRiskScore() { return riskScore; }
+    /** Value of the priced holdings the figures are based on. */
+    public BigDecimal getValue() { return pounds(value); }
+    /** e.g. 0.95 for 95% VaR. */
+    public double getConfidence() { return confidence; }
+    /** Daily returns in the lookback and Monte Carlo paths used. */
+    public int getObservations() { return observations; }
+    public int getSimulations() { return simulations; }
+
+    public BigDecimal getHistoricalVar() { return pounds(historicalVar); }
+    public BigDecimal getHistoricalCvar() { return pounds(historicalCvar); }
+    public BigDecimal getMonteCarloVar() { return pounds(monteCarloVar); }
+    public BigDecimal getMonteCarloCvar() { return pounds(monteCarloCvar); }
+
+    /** Monte Carlo VaR as a fraction of the portfolio value, e.g. 0.013 for 1.3%. */
+    public double getVarFraction() {
+        return value > 0 ? monteCarloVar / value : Double.NaN;
+    }
+
+    /** Annualised volatility implied by the covariance of the holdings' returns. */
+    public double getVolatility() { return volatility; }
+
+    /** Low / Medium / High by Monte Carlo VaR fraction, see {@link RiskService#levelFor(double)}. */
+    public String getRiskLevel() {
+        return RiskService.levelFor(getVarFraction());
+    }
+
+    /** Highest level the client's risk score allows, see {@link RiskService#bandFor(int)}. */
+    public String getAllowedLevel() {
+        return RiskService.bandFor(riskScore);
+    }
+
+    /** True if the measured level is above the one the risk score allows. */
+    public boolean isOverBand() {
+        return RiskService.rank(getRiskLevel()) > RiskService.rank(getAllowedLevel());
+    }
+
+    private static BigDecimal pounds(double amount) {
+        return Double.isNaN(amount) ? null : BigDecimal.valueOf(amount).setScale(2, RoundingMode.HALF_UP);
+    }
+
+    @Override
+    public String toString() {
+        return "RiskReport[" + clientId + ", score=" + riskScore + ", value=" + getValue()
+                + ", hVaR=" + getHistoricalVar() + ", hCVaR=" + getHistoricalCvar()
+                + ", mcVaR=" + getMonteCarloVar() + ", mcCVaR=" + getMonteCarloCvar()
+                + ", vol=" + volatility + ", level=" + getRiskLevel() + "/" + getAllowedLevel() + "]";
+    }
+}
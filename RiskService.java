@@ -0,0 +1,337 @@
+package com.quinpoint.service;
+
+import com.quinpoint.model.Client;
+import com.quinpoint.model.Holding;
+import com.quinpoint.model.PortfolioAssignment;
+
+import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * One-day VaR and CVaR per client from its holdings and the loaded price history.
+ *
+ * Daily log returns of every instrument over the lookback are built once per dataset
+ * ({@link ReturnHistory}). For a client the positions are valued at their latest close and
+ * <ul>
+ *   <li>historical VaR replays the positions through each day of the lookback;</li>
+ *   <li>Monte Carlo VaR draws correlated log returns from the sample mean and covariance
+ *       of the holdings' returns (through its Cholesky factor) and revalues the positions.</li>
+ * </ul>
+ * Paths are drawn from {@link SplittableRandom} streams split off a per-client seed in a
+ * fixed order, so a client gets the same figures whether its paths run on one thread or
+ * many, alone or in a batch.
+ *
+ * {@link #findOverBand()} assesses every client on the fork-join pool and returns those
+ * whose measured level is above the band their risk score allows.
+ */
+public class RiskService {
+
+    public static final String LOW = "Low";
+    public static final String MEDIUM = "Medium";
+    public static final String HIGH = "High";
+    public static final String UNKNOWN = "Unknown";
+
+    /**
+     * Upper VaR fractions of the Low and Medium levels. At 95% these are roughly 10% and
+     * 20% annualised volatility, the thresholds {@link PerformanceService.Stats#getRiskLevel()} uses.
+     */
+    public static final double LOW_VAR_LIMIT = 0.01;
+    public static final double MEDIUM_VAR_LIMIT = 0.02;
+
+    private static final int CHUNK = 4096;       // Monte Carlo paths per random stream
+    private static final int CLIENT_LEAF = 64;   // clients per fork-join leaf in batch runs
+
+    private final CsvLoaderService loader;
+    private final ForkJoinPool pool;
+    private final double confidence;
+    private final int lookbackDays;
+    private final int simulations;
+    private final int batchSimulations;
+    private final long seed;
+    private volatile ReturnHistory history;
+
+    public RiskService(CsvLoaderService loader) {
+        this(loader, ForkJoinPool.commonPool(), 0.95, PerformanceService.TRADING_DAYS_PER_YEAR, 20_000, 2_000, 1L);
+    }
+
+    /**
+     * @param confidence       VaR confidence level, e.g. 0.95
+     * @param lookbackDays     daily returns used for history and covariance
+     * @param simulations      Monte Carlo paths for a single client
+     * @param batchSimulations Monte Carlo paths per client in {@link #findOverBand()}
+     * @param seed             root seed; results are reproducible for a given seed
+     */
+    public RiskService(CsvLoaderService loader, ForkJoinPool pool, double confidence, int lookbackDays,
+                       int simulations, int batchSimulations, long seed) {
+        if (confidence <= 0 || confidence >= 1) throw new IllegalArgumentException("confidence must be between 0 and 1");
+        if (lookbackDays < 2) throw new IllegalArgumentException("lookbackDays must be at least 2");
+        if (simulations < 1 || batchSimulations < 1) throw new IllegalArgumentException("simulations must be at least 1");
+        this.loader = loader;
+        this.pool = pool;
+        this.confidence = confidence;
+        this.lookbackDays = lookbackDays;
+        this.simulations = simulations;
+        this.batchSimulations = batchSimulations;
+        this.seed = seed;
+    }
+
+    // --- risk bands ---
+
+    /** Low / Medium / High for a one-day VaR fraction, Unknown for NaN. */
+    public static String levelFor(double varFraction) {
+        if (Double.isNaN(varFraction)) return UNKNOWN;
+        if (varFraction <= LOW_VAR_LIMIT) return LOW;
+        if (varFraction <= MEDIUM_VAR_LIMIT) return MEDIUM;
+        return HIGH;
+    }
+
+    /** Highest level allowed by a risk score: up to 3 Low, up to 6 Medium, above that High. */
+    public static String bandFor(int riskScore) {
+        if (riskScore <= 3) return LOW;
+        if (riskScore <= 6) return MEDIUM;
+        return HIGH;
+    }
+
+    static int rank(String level) {
+        switch (level) {
+            case LOW: return 1;
+            case MEDIUM: return 2;
+            case HIGH: return 3;
+            default: return 0;
+        }
+    }
+
+    // --- single client ---
+
+    /** VaR/CVaR of a client's holdings, with the Monte Carlo paths split across the pool. */
+    public RiskReport assess(String clientId) {
+        Dataset data = loader.getDataset(); // one consistent snapshot for the whole call
+        return assess(clientId, data, history(data), simulations, true);
+    }
+
+    // --- batch ---
+
+    /**
+     * Assesses every client (and every assigned portfolio's client) and returns those whose
+     * measured level is above their band, worst VaR fraction first.
+     */
+    public List<RiskReport> findOverBand() {
+        Dataset data = loader.getDataset();
+        ReturnHistory returns = history(data);
+        Set<String> ids = new LinkedHashSet<>(data.getClients().keySet());
+        for (PortfolioAssignment pa : data.getAssignments()) ids.add(pa.getClientId());
+        String[] clientIds = ids.toArray(new String[0]);
+        RiskReport[] reports = new RiskReport[clientIds.length];
+        pool.invoke(new AssessClients(this, data, returns, clientIds, reports, 0, clientIds.length));
+
+        List<RiskReport> over = new ArrayList<>();
+        for (RiskReport r : reports) if (r.isOverBand()) over.add(r);
+        over.sort(Comparator.comparingDouble(RiskReport::getVarFraction).reversed());
+        return over;
+    }
+
+    private static final class AssessClients extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final RiskService service;
+        private final Dataset data;
+        private final ReturnHistory returns;
+        private final String[] clientIds;
+        private final RiskReport[] reports;
+        private final int from, to;
+
+        AssessClients(RiskService service, Dataset data, ReturnHistory returns, String[] clientIds,
+                      RiskReport[] reports, int from, int to) {
+            this.service = service;
+            this.data = data;
+            this.returns = returns;
+            this.clientIds = clientIds;
+            this.reports = reports;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from > CLIENT_LEAF) {
+                int mid = (from + to) >>> 1;
+                invokeAll(new AssessClients(service, data, returns, clientIds, reports, from, mid),
+                        new AssessClients(service, data, returns, clientIds, reports, mid, to));
+                return;
+            }
+            for (int i = from; i < to; i++) {
+                reports[i] = service.assess(clientIds[i], data, returns, service.batchSimulations, false);
+            }
+        }
+    }
+
+    // --- one client ---
+
+    private ReturnHistory history(Dataset data) {
+        ReturnHistory h = history;
+        if (h != null && h.version == data.getVersion()) return h;
+        synchronized (this) {
+            h = history;
+            if (h == null || h.version != data.getVersion()) {
+                h = ReturnHistory.build(data, lookbackDays);
+                history = h;
+            }
+            return h;
+        }
+    }
+
+    private RiskReport assess(String clientId, Dataset data, ReturnHistory returns, int paths, boolean parallel) {
+        Client client = data.getClients().get(clientId);
+        int riskScore = client == null ? 0 : client.getRiskScore();
+        List<Holding> holdings = data.getHoldings().getOrDefault(clientId, List.of());
+
+        // positions by instrument: latest value and return row
+        double[] weights = new double[holdings.size()];
+        double[][] rows = new double[holdings.size()][];
+        int k = 0;
+        double value = 0;
+        for (Holding h : holdings) {
+            PriceStore.Series s = data.getPrices().seriesFor(h);
+            if (s == null || s.isEmpty()) continue;
+            double position = s.latestClose().multiply(h.getQuantity()).doubleValue();
+            double[] row = returns.returnsFor(h);
+            value += position;
+            int j = 0;
+            while (j < k && rows[j] != row) j++;
+            if (j == k) rows[k++] = row;
+            weights[j] += position;
+        }
+        int n = returns.size();
+        if (k == 0 || n < 2) {
+            return new RiskReport(clientId, riskScore, value, confidence, n, 0,
+                    Double.NaN, Double.NaN, Double.NaN, Double.NaN, Double.NaN);
+        }
+        weights = Arrays.copyOf(weights, k);
+        rows = Arrays.copyOf(rows, k);
+
+        // historical: replay every day of the lookback
+        double[] losses = new double[n];
+        for (int t = 0; t < n; t++) {
+            double pnl = 0;
+            for (int j = 0; j < k; j++) pnl += weights[j] * (Math.exp(rows[j][t]) - 1);
+            losses[t] = -pnl;
+        }
+        double[] historical = varAndCvar(losses, confidence);
+
+        // sample mean and covariance of the holdings' log returns
+        double[] mean = new double[k];
+        for (int j = 0; j < k; j++) {
+            double sum = 0;
+            for (int t = 0; t < n; t++) sum += rows[j][t];
+            mean[j] = sum / n;
+        }
+        double[][] cov = new double[k][k];
+        for (int a = 0; a < k; a++) {
+            for (int b = 0; b <= a; b++) {
+                double sum = 0;
+                for (int t = 0; t < n; t++) sum += (rows[a][t] - mean[a]) * (rows[b][t] - mean[b]);
+                cov[a][b] = cov[b][a] = sum / (n - 1);
+            }
+        }
+        double variance = 0;
+        for (int a = 0; a < k; a++) {
+            for (int b = 0; b < k; b++) variance += weights[a] * cov[a][b] * weights[b];
+        }
+        double volatility = value > 0 ? Math.sqrt(Math.max(variance, 0)) / value
+                * Math.sqrt(PerformanceService.TRADING_DAYS_PER_YEAR) : Double.NaN;
+
+        // Monte Carlo: one stream per chunk of paths, split off in a fixed order
+        double[][] chol = cholesky(cov);
+        double[] simulated = new double[paths];
+        int chunks = (paths + CHUNK - 1) / CHUNK;
+        SplittableRandom root = new SplittableRandom(seed * 31 + clientId.hashCode());
+        SplittableRandom[] streams = new SplittableRandom[chunks];
+        for (int c = 0; c < chunks; c++) streams[c] = root.split();
+        Simulate task = new Simulate(mean, chol, weights, streams, simulated, 0, chunks);
+        if (parallel && chunks > 1) pool.invoke(task); else task.compute();
+        double[] monteCarlo = varAndCvar(simulated, confidence);
+
+        return new RiskReport(clientId, riskScore, value, confidence, n, paths,
+                historical[0], historical[1], monteCarlo[0], monteCarlo[1], volatility);
+    }
+
+    private static final class Simulate extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final double[] mean;
+        private final double[][] chol;
+        private final double[] weights;
+        private final SplittableRandom[] streams;
+        private final double[] losses;
+        private final int from, to; // chunks
+
+        Simulate(double[] mean, double[][] chol, double[] weights, SplittableRandom[] streams, double[] losses,
+                 int from, int to) {
+            this.mean = mean;
+            this.chol = chol;
+            this.weights = weights;
+            this.streams = streams;
+            this.losses = losses;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from > 1) {
+                int mid = (from + to) >>> 1;
+                invokeAll(new Simulate(mean, chol, weights, streams, losses, from, mid),
+                        new Simulate(mean, chol, weights, streams, losses, mid, to));
+                return;
+            }
+            int k = weights.length;
+            double[] z = new double[k];
+            SplittableRandom random = streams[from];
+            int end = Math.min(losses.length, (from + 1) * CHUNK);
+            for (int s = from * CHUNK; s < end; s++) {
+                for (int i = 0; i < k; i++) z[i] = random.nextGaussian();
+                double pnl = 0;
+                for (int i = 0; i < k; i++) {
+                    double r = mean[i];
+                    double[] li = chol[i];
+                    for (int j = 0; j <= i; j++) r += li[j] * z[j];
+                    pnl += weights[i] * (Math.exp(r) - 1); // exp is an intrinsic, expm1 isn't
+                }
+                losses[s] = -pnl;
+            }
+        }
+    }
+
+    /**
+     * Lower-triangular L with L * L^T = a. Pivots that come out zero or negative (an
+     * instrument with no variance, or one that moves exactly with others) get a zero
+     * column, so positive semi-definite matrices work too.
+     */
+    static double[][] cholesky(double[][] a) {
+        int k = a.length;
+        double[][] l = new double[k][k];
+        for (int j = 0; j < k; j++) {
+            double d = a[j][j];
+            for (int m = 0; m < j; m++) d -= l[j][m] * l[j][m];
+            if (d <= 1e-18) continue;
+            double pivot = Math.sqrt(d);
+            l[j][j] = pivot;
+            for (int i = j + 1; i < k; i++) {
+                double s = a[i][j];
+                for (int m = 0; m < j; m++) s -= l[i][m] * l[j][m];
+                l[i][j] = s / pivot;
+            }
+        }
+        return l;
+    }
+
+    // {VaR, CVaR}: the loss at the confidence quantile and the mean loss from there up; sorts losses
+    static double[] varAndCvar(double[] losses, double confidence) {
+        Arrays.sort(losses);
+        int q = Math.min(losses.length - 1, Math.max(0, (int) Math.ceil(confidence * losses.length) - 1));
+        double tail = 0;
+        for (int i = q; i < losses.length; i++) tail += losses[i];
+        return new double[]{losses[q], tail / (losses.length - q)};
+    }
+}
@@ -0,0 +1,99 @@
+package com.quinpoint.service;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.nio.charset.StandardCharsets;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * Listens on a loopback port for feeds that write ticks as text lines,
+ * {@code instrumentId,yyyy-MM-dd,close} each. Any number of feeds can connect; each
+ * connection is read on its own daemon thread. A stand-in for a market data feed.
+ */
+public class SocketTickSource implements TickSource {
+
+    private final int requestedPort;
+    private final AtomicLong rejected = new AtomicLong();
+    private final Set<Socket> connections = ConcurrentHashMap.newKeySet();
+    private ServerSocket server;
+
+    /** @param port port to listen on, or 0 for any free one (see {@link #getPort()}) */
+    public SocketTickSource(int port) {
+        this.requestedPort = port;
+    }
+
+    @Override
+    public synchronized void start(Consumer<PriceTick> sink) throws IOException {
+        if (server != null) throw new IllegalStateException("Already started");
+        server = new ServerSocket(requestedPort, 50, InetAddress.getLoopbackAddress());
+        ServerSocket listening = server;
+        Thread acceptor = new Thread(() -> acceptLoop(listening, sink), "tick-socket");
+        acceptor.setDaemon(true);
+        acceptor.start();
+    }
+
+    /** The port being listened on, once started. */
+    public synchronized int getPort() {
+        return server == null ? requestedPort : server.getLocalPort();
+    }
+
+    @Override
+    public long getRejectedCount() {
+        return rejected.get();
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (server != null) server.close();
+        for (Socket s : connections) {
+            try {
+                s.close();
+            } catch (IOException ignored) {
+                // closing anyway
+            }
+        }
+    }
+
+    private void acceptLoop(ServerSocket listening, Consumer<PriceTick> sink) {
+        while (!listening.isClosed()) {
+            try {
+                Socket s = listening.accept();
+                connections.add(s);
+                Thread reader = new Thread(() -> read(s, sink), "tick-feed-" + s.getPort());
+                reader.setDaemon(true);
+                reader.start();
+            } catch (IOException e) {
+                if (!listening.isClosed()) e.printStackTrace();
+            }
+        }
+    }
+
+    private void read(Socket s, Consumer<PriceTick> sink) {
+        try (s; BufferedReader in = new BufferedReader(
+                new InputStreamReader(s.getInputStream(), StandardCharsets.UTF_8), 64 * 1024)) {
+            String line;
+            while ((line = in.readLine()) != null) {
+                if (line.isBlank()) continue;
+                try {
+                    sink.accept(PriceTick.parse(line));
+                } catch (IllegalArgumentException e) {
+                    rejected.incrementAndGet();
+                }
+            }
+        } catch (SocketException closed) {
+            // feed went away or the source was closed
+        } catch (IOException e) {
+            e.printStackTrace();
+        } finally {
+            connections.remove(s);
+        }
+    }
+}
@@ -0,0 +1,130 @@
+package com.quinpoint.service;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Feeds live price ticks from any number of {@link TickSource}s into the loader's
+ * dataset. {@link #offer} never blocks: ticks are coalesced per instrument and day, so
+ * only the latest close of each is kept, and a single publisher thread hands whatever has
+ * accumulated to {@link CsvLoaderService#applyTicks} once per publish interval. However
+ * fast ticks arrive, there is at most one new dataset per interval, and only the
+ * instruments that ticked get new series; valuations of clients that don't hold them stay
+ * cached (see {@link ValuationCache#onReload}).
+ */
+public class TickIngestor implements Closeable {
+
+    // one instrument's ticks since the last publish, by day; usually just one day
+    private static final class Pending {
+        final List<PriceTick> ticks = new ArrayList<>(2);
+
+        Pending add(PriceTick t) {
+            int i = ticks.size() - 1;
+            while (i >= 0 && ticks.get(i).getEpochDay() > t.getEpochDay()) i--;
+            if (i >= 0 && ticks.get(i).getEpochDay() == t.getEpochDay()) ticks.set(i, t);
+            else ticks.add(i + 1, t);
+            return this;
+        }
+    }
+
+    private final CsvLoaderService loader;
+    private final long publishIntervalMillis;
+    private final ConcurrentHashMap<String, Pending> pending = new ConcurrentHashMap<>();
+    private final List<TickSource> sources = new CopyOnWriteArrayList<>();
+    private final ScheduledExecutorService publisher;
+
+    private final AtomicLong received = new AtomicLong();
+    private final AtomicLong published = new AtomicLong();
+    private final AtomicLong batches = new AtomicLong();
+
+    public TickIngestor(CsvLoaderService loader, long publishIntervalMillis) {
+        if (publishIntervalMillis < 1) throw new IllegalArgumentException("publishIntervalMillis must be at least 1");
+        this.loader = loader;
+        this.publishIntervalMillis = publishIntervalMillis;
+        this.publisher = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "tick-publisher");
+            t.setDaemon(true);
+            return t;
+        });
+        publisher.scheduleWithFixedDelay(this::publishSafely, publishIntervalMillis, publishIntervalMillis,
+                TimeUnit.MILLISECONDS);
+    }
+
+    /** Starts the source; its ticks are ingested until this ingestor is closed. */
+    public void addSource(TickSource source) throws IOException {
+        sources.add(source);
+        source.start(this::offer);
+    }
+
+    /** Queues a tick for the next publish. Safe from any thread. */
+    public void offer(PriceTick tick) {
+        received.incrementAndGet();
+        pending.compute(tick.getInstrumentId(), (id, p) -> (p == null ? new Pending() : p).add(tick));
+    }
+
+    /** Publishes what has accumulated now instead of at the next interval; returns the event, or null. */
+    public ReloadEvent flush() {
+        Map<String, List<PriceTick>> batch = new HashMap<>();
+        ReloadEvent event;
+        // flush() and the publisher thread mustn't publish out of order, so taking the ticks
+        // and publishing them is one step: otherwise two of them could each take some ticks
+        // and the one holding the newer close for an instrument could publish first
+        synchronized (this) {
+            for (String id : pending.keySet()) {
+                Pending p = pending.remove(id); // ticks arriving from here on start a new Pending
+                if (p != null) batch.put(id, p.ticks);
+            }
+            if (batch.isEmpty()) return null;
+            event = loader.applyTicks(batch);
+        }
+        int n = 0;
+        for (List<PriceTick> ticks : batch.values()) n += ticks.size();
+        published.addAndGet(n);
+        batches.incrementAndGet();
+        return event;
+    }
+
+    public long getPublishIntervalMillis() { return publishIntervalMillis; }
+    /** Ticks offered so far. */
+    public long getReceivedCount() { return received.get(); }
+    /** Ticks that went into a dataset; the rest were replaced by a later tick for the same day. */
+    public long getPublishedCount() { return published.get(); }
+    public long getBatchCount() { return batches.get(); }
+
+    @Override
+    public void close() throws IOException {
+        IOException failure = null;
+        for (TickSource s : sources) {
+            try {
+                s.close();
+            } catch (IOException e) {
+                failure = e;
+            }
+        }
+        publisher.shutdownNow();
+        if (failure != null) throw failure;
+    }
+
+    private void publishSafely() {
+        try {
+            flush();
+        } catch (RuntimeException e) {
+            e.printStackTrace(); // a bad batch mustn't stop the publisher
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "TickIngestor[received=" + received + ", published=" + published + ", batches=" + batches + "]";
+    }
+}
@@ -0,0 +1,19 @@
+package com.quinpoint.service;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.function.Consumer;
+
+/**
+ * Where live price ticks come from, e.g. {@link FileTailTickSource} or
+ * {@link SocketTickSource}. A source delivers ticks on its own thread(s); the sink never
+ * blocks, so a source can push as fast as it reads.
+ */
+public interface TickSource extends Closeable {
+
+    /** Starts reading; ticks go to sink until the source is closed. */
+    void start(Consumer<PriceTick> sink) throws IOException;
+
+    /** Lines that couldn't be parsed as ticks, which are skipped. */
+    long getRejectedCount();
+}
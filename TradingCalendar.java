@@ -0,0 +1,264 @@
+package com.quinpoint.service;
+
+import com.quinpoint.model.Holding;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * The trading days of a dataset (every day any instrument has a close) and each price
+ * series aligned to them. An {@link Aligned} series has a close for every calendar slot
+ * from its first close on: a day without a close of its own carries the previous close
+ * forward. Reading a close for a slot is an array read.
+ *
+ * Built by {@link CsvLoaderService} whenever it publishes new prices. Series that didn't
+ * change keep their aligned arrays while the trading days are the same, and only grow
+ * them when days are added after the last one.
+ */
+public final class TradingCalendar {
+
+    static final TradingCalendar EMPTY = new TradingCalendar(new int[0], new Aligned[0], Map.of());
+
+    /** One instrument's closes by calendar slot, from {@link #getFirstSlot()} to the end. */
+    public static final class Aligned {
+        private final PriceStore.Series source;
+        private final int first;
+        final long[] closes; // slot first + i at index i, at the series' scale
+
+        private Aligned(PriceStore.Series source, int first, long[] closes) {
+            this.source = source;
+            this.first = first;
+            this.closes = closes;
+        }
+
+        public String getInstrumentId() { return source.getInstrumentId(); }
+        /** Slot of the instrument's first close; earlier slots have no price. */
+        public int getFirstSlot() { return first; }
+        public int getScale() { return source.getScale(); }
+
+        /** Close on the slot's day or the last one before it; only for slots from the first slot on. */
+        public long getUnscaledClose(int slot) {
+            return closes[slot - first];
+        }
+
+        /** Close as of the slot's day, or null before the first close. */
+        public BigDecimal getClose(int slot) {
+            return slot < first ? null : BigDecimal.valueOf(closes[slot - first], source.getScale());
+        }
+    }
+
+    private final int[] days;
+    private final Aligned[] byIndex;   // by registry index
+    private final Map<String, Aligned> byId;
+
+    private TradingCalendar(int[] days, Aligned[] byIndex, Map<String, Aligned> byId) {
+        this.days = days;
+        this.byIndex = byIndex;
+        this.byId = byId;
+    }
+
+    /**
+     * Calendar of every price day in the store. Aligned series of previous are reused for
+     * series that are unchanged when the days are the same, and extended with their last
+     * close when days were only added at the end.
+     */
+    static TradingCalendar build(PriceStore prices, TradingCalendar previous) {
+        int[] days = previous == null ? unionOfDays(prices) : unionWithChanges(prices, previous);
+        boolean sameDays = previous != null && Arrays.equals(previous.days, days);
+        if (sameDays) days = previous.days; // shared, so hasSameDays is a reference check
+        boolean appended = previous != null && !sameDays && startsWith(days, previous.days);
+
+        Map<String, Aligned> byId = new HashMap<>(prices.size() * 2);
+        for (String id : prices.instrumentIds()) {
+            PriceStore.Series s = prices.get(id);
+            Aligned old = previous == null ? null : previous.byId.get(id);
+            Aligned a;
+            if (old != null && old.source == s && sameDays) {
+                a = old;
+            } else if (old != null && old.source == s && appended) {
+                a = extend(old, days.length);
+            } else if (old != null && (sameDays || appended)) {
+                a = realign(s, days, old); // e.g. a live tick: slots before it keep their closes
+            } else {
+                a = align(s, days);
+            }
+            if (a != null) byId.put(id, a);
+        }
+        Aligned[] byIndex = new Aligned[prices.indexCapacity()];
+        for (int i = 0; i < byIndex.length; i++) {
+            PriceStore.Series s = prices.get(i);
+            if (s != null) byIndex[i] = byId.get(s.getInstrumentId());
+        }
+        return new TradingCalendar(days, byIndex, byId);
+    }
+
+    public int size() { return days.length; }
+    public int getEpochDay(int slot) { return days[slot]; }
+    public LocalDate getDate(int slot) { return LocalDate.ofEpochDay(days[slot]); }
+
+    /** Slot of the last trading day on or before epochDay, or -1 if every day is later. */
+    public int slotAtOrBefore(long epochDay) {
+        int lo = 0, hi = days.length - 1, found = -1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            if (days[mid] <= epochDay) { found = mid; lo = mid + 1; } else hi = mid - 1;
+        }
+        return found;
+    }
+
+    /** Slot of the first trading day on or after epochDay, or size() if every day is earlier. */
+    public int slotAtOrAfter(long epochDay) {
+        int lo = 0, hi = days.length;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (days[mid] < epochDay) lo = mid + 1; else hi = mid;
+        }
+        return lo;
+    }
+
+    /** Aligned closes of the holding's instrument, or null if it has none. */
+    public Aligned aligned(Holding h) {
+        int i = h.getInstrumentIndex();
+        if (i >= 0 && i < byIndex.length && byIndex[i] != null && byIndex[i].getInstrumentId().equals(h.getInstrumentId())) {
+            return byIndex[i];
+        }
+        return byId.get(h.getInstrumentId());
+    }
+
+    public Aligned aligned(String instrumentId) {
+        return byId.get(instrumentId);
+    }
+
+    /** True if other has exactly these trading days. */
+    boolean hasSameDays(TradingCalendar other) {
+        return other.days == days || Arrays.equals(other.days, days);
+    }
+
+    /** True if this calendar is older's days with zero or more days added after them. */
+    boolean extendsDaysOf(TradingCalendar older) {
+        return startsWith(days, older.days);
+    }
+
+    private static boolean startsWith(int[] days, int[] prefix) {
+        return prefix.length <= days.length && Arrays.equals(days, 0, prefix.length, prefix, 0, prefix.length);
+    }
+
+    // an unchanged series on a calendar with days added at the end: carry its last close forward
+    private static Aligned extend(Aligned a, int calendarSize) {
+        long[] closes = Arrays.copyOf(a.closes, calendarSize - a.first);
+        if (a.closes.length > 0) Arrays.fill(closes, a.closes.length, closes.length, a.closes[a.closes.length - 1]);
+        return new Aligned(a.source, a.first, closes);
+    }
+
+    // every day with a close, sorted; marked in a bitset over the date span rather than sorted
+    private static int[] unionOfDays(PriceStore prices) {
+        int min = Integer.MAX_VALUE, max = Integer.MIN_VALUE;
+        for (String id : prices.instrumentIds()) {
+            PriceStore.Series s = prices.get(id);
+            if (s.isEmpty()) continue;
+            min = Math.min(min, s.getEpochDay(0));
+            max = Math.max(max, s.getEpochDay(s.size() - 1));
+        }
+        if (min > max) return new int[0];
+        BitSet seen = new BitSet((int) Math.min((long) max - min + 1, Integer.MAX_VALUE));
+        for (String id : prices.instrumentIds()) {
+            PriceStore.Series s = prices.get(id);
+            for (int i = 0; i < s.size(); i++) seen.set(s.getEpochDay(i) - min);
+        }
+        int[] days = new int[seen.cardinality()];
+        int n = 0;
+        for (int b = seen.nextSetBit(0); b >= 0; b = seen.nextSetBit(b + 1)) days[n++] = b + min;
+        return days;
+    }
+
+    // the previous days plus those of the series that changed since, which is what live
+    // ticks need; when a series went away or lost days it's the full union again, since
+    // those days may not be anyone's any more
+    private static int[] unionWithChanges(PriceStore prices, TradingCalendar previous) {
+        for (String id : previous.byId.keySet()) {
+            if (prices.get(id) == null) return unionOfDays(prices);
+        }
+        int[] days = previous.days;
+        for (String id : prices.instrumentIds()) {
+            PriceStore.Series s = prices.get(id);
+            Aligned old = previous.byId.get(id);
+            if (old != null && old.source == s) continue;
+            // days before the first change are the old series' days, all in the calendar already
+            int from = old == null ? 0 : s.mismatch(old.source);
+            if (old != null && !hasAllDays(s, old.source, from)) return unionOfDays(prices);
+            days = withDays(days, s, from);
+        }
+        return days;
+    }
+
+    private static boolean hasAllDays(PriceStore.Series s, PriceStore.Series of, int from) {
+        int i = from;
+        for (int j = from; j < of.size(); j++) {
+            int day = of.getEpochDay(j);
+            while (i < s.size() && s.getEpochDay(i) < day) i++;
+            if (i == s.size() || s.getEpochDay(i) != day) return false;
+        }
+        return true;
+    }
+
+    // days with the series' days from index from on merged in; the same array if it has them all already
+    private static int[] withDays(int[] days, PriceStore.Series s, int from) {
+        int missing = 0;
+        for (int i = 0, j = from; j < s.size(); j++) {
+            int day = s.getEpochDay(j);
+            while (i < days.length && days[i] < day) i++;
+            if (i == days.length || days[i] != day) missing++;
+        }
+        if (missing == 0) return days;
+        int[] out = new int[days.length + missing];
+        int i = 0, j = from, k = 0;
+        while (i < days.length || j < s.size()) {
+            int next;
+            if (j == s.size() || (i < days.length && days[i] <= s.getEpochDay(j))) {
+                next = days[i++];
+            } else {
+                next = s.getEpochDay(j++);
+            }
+            if (k == 0 || out[k - 1] != next) out[k++] = next;
+        }
+        return out;
+    }
+
+    // s replaces old's series on a calendar whose days start with old's: the aligned closes
+    // before the first difference are the same, so only the slots from there on are redone.
+    // That's the earlier of the two series' days at the mismatch, since s may have lost a
+    // day that other series still trade. Slots added after old's last day but before it
+    // (days other series brought in) carry s's last unchanged close forward.
+    private static Aligned realign(PriceStore.Series s, int[] days, Aligned old) {
+        int m = s.mismatch(old.source);
+        if (m == 0 || m == s.size()) return align(s, days);
+        int firstChange = m < old.source.size() ? Math.min(s.getEpochDay(m), old.source.getEpochDay(m)) : s.getEpochDay(m);
+        int from = Arrays.binarySearch(days, firstChange);
+        long[] closes = Arrays.copyOf(old.closes, days.length - old.first);
+        if (from - old.first > old.closes.length) {
+            Arrays.fill(closes, old.closes.length, from - old.first, s.getUnscaledClose(m - 1));
+        }
+        int j = m - 1; // s's days before m are all before the first change
+        for (int t = from; t < days.length; t++) {
+            while (j + 1 < s.size() && s.getEpochDay(j + 1) <= days[t]) j++;
+            closes[t - old.first] = s.getUnscaledClose(j);
+        }
+        return new Aligned(s, old.first, closes);
+    }
+
+    private static Aligned align(PriceStore.Series s, int[] days) {
+        if (s.isEmpty()) return null;
+        int first = Arrays.binarySearch(days, s.getEpochDay(0)); // every price day is in the calendar
+        long[] closes = new long[days.length - first];
+        int j = 0;
+        for (int t = first; t < days.length; t++) {
+            while (j + 1 < s.size() && s.getEpochDay(j + 1) <= days[t]) j++;
+            closes[t - first] = s.getUnscaledClose(j);
+        }
+        return new Aligned(s, first, closes);
+    }
+}
@@ -0,0 +1,179 @@
+package com.quinpoint.service;
+
+import com.quinpoint.model.Holding;
+
+import java.math.BigDecimal;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Bounded LRU cache of per-client valuations (total value and holdings breakdown).
+ * Each entry is stamped with the dataset version it was last known to be valid for.
+ * A lookup against the same version is a plain map hit; against a newer version the
+ * entry is still used if its {@link ClientInputs} are unchanged.
+ * Reload events drop affected entries straight away, via an instrument -> clients index.
+ */
+public class ValuationCache {
+
+    /**
+     * A client's valuation at one dataset version. The breakdown map is read-only; when the
+     * valuation was made in fixed point it's built from the per-holding pence on first use.
+     */
+    static final class Valuation {
+        /** Pence of a holding without prices. */
+        static final long UNPRICED = Long.MIN_VALUE;
+
+        final BigDecimal total;
+        final ClientInputs inputs;
+        private final long[] holdingCents; // per holding, null if the breakdown was given
+        private volatile Map<String, BigDecimal> breakdown;
+        long version;
+
+        Valuation(BigDecimal total, Map<String, BigDecimal> breakdown, ClientInputs inputs, long version) {
+            this.total = total;
+            this.breakdown = breakdown;
+            this.holdingCents = null;
+            this.inputs = inputs;
+            this.version = version;
+        }
+
+        Valuation(BigDecimal total, long[] holdingCents, ClientInputs inputs, long version) {
+            this.total = total;
+            this.holdingCents = holdingCents;
+            this.inputs = inputs;
+            this.version = version;
+        }
+
+        Map<String, BigDecimal> breakdown() {
+            Map<String, BigDecimal> b = breakdown;
+            if (b == null) {
+                // same as the BigDecimal path: holdings in order, a later one replaces an earlier one
+                Map<String, BigDecimal> built = new HashMap<>();
+                List<Holding> holdings = inputs.holdingsOrEmpty();
+                for (int i = 0; i < holdingCents.length; i++) {
+                    if (holdingCents[i] == UNPRICED) continue;
+                    built.put(holdings.get(i).getInstrumentId(), BigDecimal.valueOf(holdingCents[i], 2));
+                }
+                b = Collections.unmodifiableMap(built);
+                breakdown = b;
+            }
+            return b;
+        }
+
+        boolean isValidFor(Dataset data) {
+            return version == data.getVersion() || inputs.isCurrentIn(data);
+        }
+    }
+
+    private final int maxEntries;
+    private final Map<String, Valuation> entries;
+    private final Map<String, Set<String>> clientsByInstrument = new HashMap<>();
+
+    private long hits;
+    private long misses;
+    private long evictions;
+    private long invalidations;
+
+    public ValuationCache(int maxEntries) {
+        if (maxEntries < 1) throw new IllegalArgumentException("maxEntries must be at least 1");
+        this.maxEntries = maxEntries;
+        this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Valuation> eldest) {
+                if (size() <= ValuationCache.this.maxEntries) return false;
+                evictions++;
+                unindex(eldest.getKey(), eldest.getValue());
+                return true;
+            }
+        };
+    }
+
+    /** Returns the cached valuation if it still holds for data, otherwise null. */
+    synchronized Valuation get(String clientId, Dataset data) {
+        Valuation v = entries.get(clientId);
+        if (v != null && v.isValidFor(data)) {
+            v.version = Math.max(v.version, data.getVersion());
+            hits++;
+            return v;
+        }
+        if (v != null) {
+            entries.remove(clientId);
+            unindex(clientId, v);
+            invalidations++;
+        }
+        misses++;
+        return null;
+    }
+
+    synchronized void put(String clientId, Valuation v) {
+        Valuation old = entries.get(clientId);
+        if (old != null) {
+            if (old.version > v.version) return; // computed against an older dataset meanwhile
+            unindex(clientId, old);
+        }
+        entries.put(clientId, v);
+        for (String id : v.inputs.instruments) clientsByInstrument.computeIfAbsent(id, k -> new HashSet<>()).add(clientId);
+    }
+
+    /** Reload listener: drops the entries whose holdings or prices changed. */
+    public synchronized void onReload(ReloadEvent event) {
+        if (event.isFullReload()) {
+            invalidations += entries.size();
+            entries.clear();
+            clientsByInstrument.clear();
+            return;
+        }
+        for (String clientId : event.getChangedHoldings()) invalidate(clientId);
+        for (String instrumentId : event.getChangedInstruments()) {
+            Set<String> clients = clientsByInstrument.get(instrumentId);
+            if (clients == null) continue;
+            for (String clientId : clients.toArray(new String[0])) invalidate(clientId);
+        }
+    }
+
+    public synchronized void invalidate(String clientId) {
+        Valuation v = entries.remove(clientId);
+        if (v == null) return;
+        unindex(clientId, v);
+        invalidations++;
+    }
+
+    public synchronized void clear() {
+        entries.clear();
+        clientsByInstrument.clear();
+    }
+
+    private void unindex(String clientId, Valuation v) {
+        for (String id : v.inputs.instruments) {
+            Set<String> clients = clientsByInstrument.get(id);
+            if (clients == null) continue;
+            clients.remove(clientId);
+            if (clients.isEmpty()) clientsByInstrument.remove(id);
+        }
+    }
+
+    // --- statistics ---
+
+    public synchronized int size() { return entries.size(); }
+    public int getMaxEntries() { return maxEntries; }
+    public synchronized long getHits() { return hits; }
+    public synchronized long getMisses() { return misses; }
+    public synchronized long getEvictions() { return evictions; }
+    public synchronized long getInvalidations() { return invalidations; }
+
+    public synchronized double getHitRate() {
+        long total = hits + misses;
+        return total == 0 ? 0 : (double) hits / total;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "ValuationCache[size=" + entries.size() + "/" + maxEntries + ", hits=" + hits + ", misses=" + misses
+                + ", evictions=" + evictions + ", invalidations=" + invalidations + "]";
+    }
+}
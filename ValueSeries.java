@@ -0,0 +1,178 @@
+package com.quinpoint.service;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Compact date/value series: epoch days with values held as pence (2dp, unscaled),
+ * in ascending date order. Totals too large for a long of pence are kept as
+ * BigDecimals instead.
+ */
+public final class ValueSeries {
+
+    static final ValueSeries EMPTY = new ValueSeries(new int[0], new long[0], 0);
+
+    private final int[] days;
+    private final long[] cents;
+    private final BigDecimal[] values; // only set when cents would overflow
+    private final int size;
+
+    ValueSeries(int[] days, long[] cents, int size) {
+        this.days = days;
+        this.cents = cents;
+        this.values = null;
+        this.size = size;
+    }
+
+    ValueSeries(int[] days, BigDecimal[] values, int size) {
+        this.days = days;
+        this.cents = null;
+        this.values = values;
+        this.size = size;
+    }
+
+    public int size() { return size; }
+    public boolean isEmpty() { return size == 0; }
+
+    public int getEpochDay(int i) {
+        checkIndex(i);
+        return days[i];
+    }
+
+    public LocalDate getDate(int i) {
+        return LocalDate.ofEpochDay(getEpochDay(i));
+    }
+
+    /** Value at index i in pence; ArithmeticException if it doesn't fit in a long. */
+    public long getCents(int i) {
+        checkIndex(i);
+        return cents != null ? cents[i] : values[i].unscaledValue().longValueExact();
+    }
+
+    /** Value at index i with scale 2. */
+    public BigDecimal getValue(int i) {
+        checkIndex(i);
+        return cents != null ? BigDecimal.valueOf(cents[i], 2) : values[i];
+    }
+
+    /** Index of the last point on or before epochDay, or -1. */
+    public int indexAtOrBefore(long epochDay) {
+        int lo = 0, hi = size - 1, found = -1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            if (days[mid] <= epochDay) { found = mid; lo = mid + 1; } else hi = mid - 1;
+        }
+        return found;
+    }
+
+    /** Index of the first point on or after epochDay, or size(). */
+    public int indexAtOrAfter(long epochDay) {
+        int lo = 0, hi = size;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (days[mid] < epochDay) lo = mid + 1; else hi = mid;
+        }
+        return lo;
+    }
+
+    /**
+     * At most maxPoints points chosen with Largest-Triangle-Three-Buckets: the first and
+     * last points are kept and each bucket in between contributes the point that forms
+     * the largest triangle with its neighbours, so peaks and troughs survive.
+     * Returns this series if it is already small enough.
+     */
+    public ValueSeries downsample(int maxPoints) {
+        if (maxPoints < 1) throw new IllegalArgumentException("maxPoints must be at least 1");
+        if (size <= maxPoints) return this;
+        if (maxPoints < 3) return select(maxPoints == 1 ? new int[] {size - 1} : new int[] {0, size - 1});
+
+        int[] picked = new int[maxPoints];
+        double bucket = (double) (size - 2) / (maxPoints - 2);
+        int a = 0; // last picked point
+        for (int b = 0; b < maxPoints - 2; b++) {
+            // average of the next bucket stands in for the point that will follow
+            int nextFrom = (int) ((b + 1) * bucket) + 1;
+            int nextTo = Math.max(Math.min((int) ((b + 2) * bucket) + 1, size), Math.min(nextFrom + 1, size));
+            double avgX = 0, avgY = 0;
+            for (int j = nextFrom; j < nextTo; j++) {
+                avgX += days[j];
+                avgY += y(j);
+            }
+            avgX /= nextTo - nextFrom;
+            avgY /= nextTo - nextFrom;
+
+            int from = (int) (b * bucket) + 1;
+            int to = (int) ((b + 1) * bucket) + 1;
+            double ax = days[a], ay = y(a);
+            double maxArea = -1;
+            int best = from;
+            for (int j = from; j < to; j++) {
+                double area = Math.abs((ax - avgX) * (y(j) - ay) - (ax - days[j]) * (avgY - ay));
+                if (area > maxArea) {
+                    maxArea = area;
+                    best = j;
+                }
+            }
+            picked[b + 1] = best;
+            a = best;
+        }
+        picked[maxPoints - 1] = size - 1;
+        return select(picked);
+    }
+
+    private double y(int i) {
+        return cents != null ? cents[i] : values[i].doubleValue();
+    }
+
+    private ValueSeries select(int[] indices) {
+        int n = indices.length;
+        int[] d = new int[n];
+        for (int i = 0; i < n; i++) d[i] = days[indices[i]];
+        if (cents != null) {
+            long[] c = new long[n];
+            for (int i = 0; i < n; i++) c[i] = cents[indices[i]];
+            return new ValueSeries(d, c, n);
+        }
+        BigDecimal[] v = new BigDecimal[n];
+        for (int i = 0; i < n; i++) v[i] = values[indices[i]];
+        return new ValueSeries(d, v, n);
+    }
+
+    /** Same content as a sorted map, as returned by PortfolioService.getPortfolioHistory. */
+    public Map<LocalDate, BigDecimal> toMap() {
+        Map<LocalDate, BigDecimal> out = new TreeMap<>();
+        for (int i = 0; i < size; i++) out.put(LocalDate.ofEpochDay(days[i]), getValue(i));
+        return out;
+    }
+
+    /** Same days and values, however the values are held. */
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof ValueSeries)) return false;
+        ValueSeries other = (ValueSeries) o;
+        if (size != other.size) return false;
+        for (int i = 0; i < size; i++) {
+            if (days[i] != other.days[i]) return false;
+            if (cents != null && other.cents != null) {
+                if (cents[i] != other.cents[i]) return false;
+            } else if (!getValue(i).equals(other.getValue(i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public int hashCode() {
+        int h = size;
+        for (int i = 0; i < size; i++) h = 31 * h + days[i];
+        return size == 0 ? h : 31 * h + getValue(size - 1).hashCode();
+    }
+
+    private void checkIndex(int i) {
+        if (i < 0 || i >= size) throw new IndexOutOfBoundsException("index " + i + " of " + size);
+    }
+}
@@ -0,0 +1,71 @@
+package com.quinpoint;
+
+import com.quinpoint.service.BackgroundExecutor;
+import com.quinpoint.service.CsvLoaderService;
+
+import javafx.application.Platform;
+import javafx.beans.property.ObjectProperty;
+import javafx.beans.property.ReadOnlyObjectProperty;
+import javafx.beans.property.SimpleObjectProperty;
+
+import java.util.Objects;
+import java.util.concurrent.CompletionException;
+import java.util.function.Consumer;
+
+/**
+ * One value shown on a page, e.g. a client's total or their chart history, kept in an
+ * observable property the page's controls listen to. {@link #refresh()} recomputes it in
+ * the background only when the dataset version has changed since the last load, and the
+ * property is only set when the new value differs, so controls are left alone otherwise.
+ * Used from the FX thread only.
+ */
+final class ViewModel<T> {
+
+    private final CsvLoaderService loader;
+    private final BackgroundExecutor background;
+    private final BackgroundExecutor.Task<T> load;
+    private final ObjectProperty<T> value = new SimpleObjectProperty<>();
+    private final ObjectProperty<Throwable> error = new SimpleObjectProperty<>();
+    private long loadedVersion = -1;
+    private boolean loading;
+
+    ViewModel(CsvLoaderService loader, BackgroundExecutor background, BackgroundExecutor.Task<T> load) {
+        this.loader = loader;
+        this.background = background;
+        this.load = load;
+    }
+
+    ReadOnlyObjectProperty<T> valueProperty() { return value; }
+    ReadOnlyObjectProperty<Throwable> errorProperty() { return error; }
+
+    /** Calls view with the current value, if there is one, and with every new value. */
+    void bind(Consumer<T> view) {
+        if (value.get() != null) view.accept(value.get());
+        value.addListener((obs, old, now) -> view.accept(now));
+    }
+
+    void onError(Consumer<Throwable> view) {
+        error.addListener((obs, old, now) -> {
+            if (now != null) view.accept(now);
+        });
+    }
+
+    /** Reloads the value if the data changed since it was loaded; a no-op otherwise. */
+    void refresh() {
+        long version = loader.getDataset().getVersion();
+        if (loading || version == loadedVersion) return;
+        loading = true;
+        background.submit(load).whenComplete((result, failure) -> Platform.runLater(() -> {
+            loading = false;
+            if (failure != null) {
+                error.set(failure instanceof CompletionException && failure.getCause() != null
+                        ? failure.getCause() : failure);
+                return; // loadedVersion is left as it was, so the next refresh tries again
+            }
+            loadedVersion = version;
+            error.set(null);
+            if (!Objects.equals(value.get(), result)) value.set(result);
+            refresh(); // the data may have moved on while this was loading
+        }));
+    }
+}